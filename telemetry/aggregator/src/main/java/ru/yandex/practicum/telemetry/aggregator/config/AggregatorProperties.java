@@ -0,0 +1,223 @@
+package ru.yandex.practicum.telemetry.aggregator.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties("aggregator")
+public class AggregatorProperties {
+
+    // число потоков-обработчиков; каждый держит свой консьюмер в общей группе
+    private int workers = 1;
+
+    // постоянный идентификатор экземпляра, уникальный среди экземпляров; по умолчанию имя хоста
+    private String instanceId;
+
+    private State state = new State();
+
+    private Kafka kafka = new Kafka();
+
+    private Restore restore = new Restore();
+
+    private Deadband deadband = new Deadband();
+
+    private Emission emission = new Emission();
+
+    private Coalescing coalescing = new Coalescing();
+
+    private Transactions transactions = new Transactions();
+
+    private Pipeline pipeline = new Pipeline();
+
+    /**
+     * Конвейерный режим: поток чтения раздаёт записи полосам, которые ведут состояние и выпускают снапшоты.
+     * Несовместим с транзакциями.
+     */
+    @Getter
+    @Setter
+    public static class Pipeline {
+
+        private boolean enabled;
+
+        // полос на обработчик; партиция целиком обрабатывается одной полосой
+        private int lanes = 2;
+
+        // ёмкость кольцевого буфера полосы, округляется до степени двойки
+        private int queueCapacity = 4096;
+    }
+
+    /**
+     * Режим exactly-once: снапшоты и оффсеты датчиков фиксируются одной транзакцией на poll.
+     */
+    @Getter
+    @Setter
+    public static class Transactions {
+
+        private boolean enabled;
+
+        private String idPrefix = "telemetry.aggregator";
+    }
+
+    /**
+     * Ограничения хранимого состояния хабов.
+     */
+    @Getter
+    @Setter
+    public static class State {
+
+        // хаб без событий дольше этого срока удаляется
+        private Duration hubTtl = Duration.ofHours(24);
+
+        // при превышении удаляются давно не обновлявшиеся хабы
+        private int maxHubs = 1_000_000;
+
+        private Duration evictionInterval = Duration.ofMinutes(1);
+
+        // удаления датчиков хабов неназначенных партиций, ждущие назначения; сверх предела отбрасываются старейшие
+        private int pendingRemovals = 100_000;
+
+        private StoreType store = StoreType.HEAP;
+
+        // каталог файлов состояния для store=mapped и store=log, по файлу на партицию
+        private String directory = "state";
+
+        // store=log, off-heap, mapped: снапшоты скольких хабов шарда держать в куче
+        private int cacheHubs = 10_000;
+
+        // store=log: изменения дописываются в журнал пачкой по столько хабов или в контрольной точке
+        private int writeBatch = 1_000;
+    }
+
+    public enum StoreType {
+        // снапшоты в куче
+        HEAP,
+        // слоты фиксированного размера вне кучи
+        OFF_HEAP,
+        // те же слоты в файле, отображённом в память; переживают перезапуск
+        MAPPED,
+        // журнал снапшотов на диске с индексом и кешем в куче; состояние может быть больше кучи
+        LOG
+    }
+
+    /**
+     * Склейка изменений одного хаба в один снапшот; {@code window=0} — каждое изменение выпускается сразу.
+     */
+    @Getter
+    @Setter
+    public static class Coalescing {
+
+        // наибольшая задержка снапшота относительно первого склеенного изменения
+        private Duration window = Duration.ZERO;
+
+        // окно закрывается досрочно после стольких изменений; 0 — без ограничения
+        private int maxChanges;
+    }
+
+    @Getter
+    @Setter
+    public static class Emission {
+
+        private EmissionMode mode = EmissionMode.FULL;
+
+        private String deltaTopic = EventTopic.TELEMETRY_SNAPSHOT_DELTA_TOPIC;
+
+        // каждая N-я дельта по хабу отправляется полной, чтобы потребитель мог восстановить состояние
+        private int keyframeInterval = 100;
+    }
+
+    public enum EmissionMode {
+        // полный снапшот в топик снапшотов
+        FULL,
+        // только дельта в топик дельт
+        DELTA,
+        // оба варианта
+        BOTH;
+
+        public boolean full() {
+            return this != DELTA;
+        }
+
+        public boolean delta() {
+            return this != FULL;
+        }
+    }
+
+    /**
+     * Минимальное изменение поля, при котором показание считается новым; 0 — любое изменение.
+     */
+    @Getter
+    @Setter
+    public static class Deadband {
+
+        // °C; для датчиков температуры сравнивается и °F с пересчитанной зоной
+        private int temperature;
+        private int humidity;
+        private int co2Level;
+        // люксы
+        private int luminosity;
+        private int linkQuality;
+        private int voltage;
+    }
+
+    public String resolveInstanceId() {
+        if (instanceId != null && !instanceId.isBlank()) {
+            return instanceId;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Не задан aggregator.instance-id", e);
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Restore {
+
+        // заполнять новые шарды назначенных партиций снапшотами из топика снапшотов
+        private boolean enabled = true;
+
+        // восстановление идёт в обработчике назначения партиций и должно укладываться в max.poll.interval.ms
+        private Duration timeout = Duration.ofSeconds(20);
+    }
+
+    @Getter
+    @Setter
+    public static class Kafka {
+
+        private String bootstrapServers = "localhost:9092";
+
+        private Client producer = new Client(EventTopic.TELEMETRY_SNAPSHOT_TOPIC);
+
+        private Client consumer = new Client(EventTopic.TELEMETRY_SENSOR_TOPIC);
+
+        private Client hubs = new Client(EventTopic.TELEMETRY_HUB_TOPIC);
+    }
+
+    @Getter
+    @Setter
+    public static class Client {
+
+        private String topic;
+
+        private Duration pollTimeout = Duration.ofMillis(100);
+
+        // применяются поверх настроек по умолчанию
+        private Map<String, String> properties = new HashMap<>();
+
+        public Client() {
+        }
+
+        Client(String topic) {
+            this.topic = topic;
+        }
+    }
+}
@@ -1,19 +1,39 @@
 package ru.yandex.practicum.telemetry.aggregator.config;
 
 import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+
+/**
+ * Экземпляр десериализатора принадлежит одному KafkaConsumer и вызывается только из его потока,
+ * поэтому reader и decoder переиспользуются без синхронизации.
+ */
 public class BaseAvroDeserializer<T extends SpecificRecordBase> implements Deserializer<T> {
+    /**
+     * Включает переиспользование одного объекта записи между вызовами. Допустимо только при
+     * {@code max.poll.records=1}: иначе все записи одного poll окажутся одним и тем же объектом.
+     */
+    public static final String RECORD_REUSE_CONFIG = "avro.record.reuse";
+
     private static final Logger LOG = LoggerFactory.getLogger(BaseAvroDeserializer.class);
 
     private final DecoderFactory decoderFactory;
+    private final DatumReader<T> reader;
+
+    private BinaryDecoder decoder;
+    private boolean reuseRecord;
+    private T reusedRecord;
 
     protected final Schema schema;
 
@@ -24,18 +44,36 @@ public class BaseAvroDeserializer<T extends SpecificRecordBase> implements Deser
     public BaseAvroDeserializer(DecoderFactory decoderFactory, Schema schema) {
         this.decoderFactory = decoderFactory;
         this.schema = schema;
+        this.reader = new SpecificDatumReader<>(schema);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        reuseRecord = Boolean.parseBoolean(String.valueOf(configs.get(RECORD_REUSE_CONFIG)));
+        if (reuseRecord && !"1".equals(String.valueOf(configs.get(ConsumerConfig.MAX_POLL_RECORDS_CONFIG)))) {
+            throw new ConfigException(RECORD_REUSE_CONFIG + " requires "
+                    + ConsumerConfig.MAX_POLL_RECORDS_CONFIG + "=1");
+        }
     }
 
     @Override
     public T deserialize(String topic, byte[] data) {
+        T result = deserialize(topic, data, reuseRecord ? reusedRecord : null);
+        if (reuseRecord && result != null) {
+            reusedRecord = result;
+        }
+        return result;
+    }
+
+    public T deserialize(String topic, byte[] data, T reuse) {
         if (data == null) {
             return null;
         }
 
         try {
             LOG.debug("Deserializing Avro message from topic='{}', size={} bytes", topic, data.length);
-            DatumReader<T> reader = new SpecificDatumReader<>(schema);
-            T result = reader.read(null, decoderFactory.binaryDecoder(data, null));
+            decoder = decoderFactory.binaryDecoder(data, decoder);
+            T result = reader.read(reuse, decoder);
             LOG.debug("Deserialized Avro message from topic='{}': {}", topic, result);
             return result;
         } catch (Exception e) {
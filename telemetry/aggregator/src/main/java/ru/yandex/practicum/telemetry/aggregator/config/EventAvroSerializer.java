@@ -1,5 +1,6 @@
 package ru.yandex.practicum.telemetry.aggregator.config;
 
+import org.apache.avro.Schema;
 import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.EncoderFactory;
@@ -8,11 +9,22 @@ import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Serializer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class EventAvroSerializer implements Serializer<SpecificRecordBase> {
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    // снапшот крупного хаба может раздуть буфер; такой буфер после записи не сохраняем
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<EncodingBuffer> BUFFERS = ThreadLocal.withInitial(EncodingBuffer::new);
+
     private final EncoderFactory encoderFactory = EncoderFactory.get();
+    private final Map<Schema, DatumWriter<SpecificRecordBase>> writers = new ConcurrentHashMap<>();
 
     @Override
     public byte[] serialize(String topic, SpecificRecordBase data) {
@@ -20,18 +32,83 @@ public class EventAvroSerializer implements Serializer<SpecificRecordBase> {
             return null;
         }
 
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            DatumWriter<SpecificRecordBase> writer = new SpecificDatumWriter<>(data.getSchema());
-            BinaryEncoder encoder = encoderFactory.binaryEncoder(out, null);
+        EncodingBuffer buffer = encode(topic, data);
+        try {
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Пишет запись в буфер из {@code pool}, готовый к чтению. Вызывающий возвращает буфер в пул сам.
+     */
+    public ByteBuffer serialize(String topic, SpecificRecordBase data, ByteBufferPool pool) {
+        if (data == null) {
+            return null;
+        }
+
+        EncodingBuffer buffer = encode(topic, data);
+        try {
+            ByteBuffer target = pool.acquire(buffer.count);
+            target.put(buffer.buf, 0, buffer.count);
+            return target.flip();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private EncodingBuffer encode(String topic, SpecificRecordBase data) {
+        EncodingBuffer buffer = BUFFERS.get();
+        try {
+            DatumWriter<SpecificRecordBase> writer =
+                    writers.computeIfAbsent(data.getSchema(), SpecificDatumWriter::new);
+            buffer.encoder = encoderFactory.directBinaryEncoder(buffer, buffer.encoder);
 
-            writer.write(data, encoder);
-            encoder.flush();
+            writer.write(data, buffer.encoder);
 
-            return out.toByteArray();
+            return buffer;
         } catch (IOException ex) {
+            buffer.release();
             throw new SerializationException(
                     "Failed to serialize Avro message for topic [" + topic + "]", ex
             );
         }
     }
+
+    private static final class EncodingBuffer extends OutputStream {
+        private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+        private int count;
+        private BinaryEncoder encoder;
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(capacity, buf.length << 1));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        private void release() {
+            count = 0;
+            if (buf.length > MAX_RETAINED_BUFFER_SIZE) {
+                buf = new byte[INITIAL_BUFFER_SIZE];
+            }
+        }
+    }
 }
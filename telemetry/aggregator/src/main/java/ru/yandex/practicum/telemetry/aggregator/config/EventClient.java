@@ -8,8 +8,30 @@ public interface EventClient {
 
     Producer<String, SpecificRecordBase> getProducer();
 
-    Consumer<String, SpecificRecordBase> getSensorConsumer();
+    /**
+     * Отдельный транзакционный продюсер обработчика; транзакции уже инициализированы, закрывает его вызывающий поток.
+     */
+    Producer<String, SpecificRecordBase> createTransactionalProducer(String transactionalId);
+
+    /**
+     * Каждый вызов создаёт новый консьюмер в общей группе; закрывает его вызывающий поток.
+     */
+    Consumer<String, SpecificRecordBase> createSensorConsumer();
+
+    /**
+     * Консьюмер без группы для чтения топика снапшотов с начала; закрывает его вызывающий поток.
+     */
+    Consumer<String, SpecificRecordBase> createSnapshotConsumer();
+
+    /**
+     * Консьюмер без группы для чтения топика дельт снапшотов с начала; закрывает его вызывающий поток.
+     */
+    Consumer<String, SpecificRecordBase> createSnapshotDeltaConsumer();
+
+    /**
+     * Консьюмер событий хабов в собственной группе экземпляра; закрывает его вызывающий поток.
+     */
+    Consumer<String, SpecificRecordBase> createHubConsumer(String groupId);
 
     void stop();
 }
-
@@ -3,6 +3,7 @@ package ru.yandex.practicum.telemetry.aggregator.config;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
@@ -16,28 +17,22 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Configuration
 public class EventConfig {
 
-    private static final String DEFAULT_BOOTSTRAP_SERVERS = "localhost:9092";
+    private static final String DEFAULT_GROUP_ID = "telemetry.aggregator.sensors";
 
     @Bean
-    EventClient getClient() {
+    EventClient getClient(AggregatorProperties properties) {
         return new EventClient() {
 
             private final AtomicInteger counter = new AtomicInteger(0);
 
+            private final AggregatorProperties.Kafka kafka = properties.getKafka();
+
             private Producer<String, SpecificRecordBase> producer;
-            private Consumer<String, SpecificRecordBase> sensorConsumer;
 
             @Override
-            public Consumer<String, SpecificRecordBase> getSensorConsumer() {
-                if (sensorConsumer == null) {
-                    initSensorConsumer();
-                }
-                return sensorConsumer;
-            }
-
-            private void initSensorConsumer() {
+            public Consumer<String, SpecificRecordBase> createSensorConsumer() {
                 Properties config = new Properties();
-                config.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, DEFAULT_BOOTSTRAP_SERVERS);
+                config.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.getBootstrapServers());
                 config.setProperty(
                         ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG,
                         "org.apache.kafka.common.serialization.StringDeserializer"
@@ -46,26 +41,99 @@ public class EventConfig {
                         ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
                         "ru.yandex.practicum.telemetry.aggregator.config.SensorEventDeserializer"
                 );
+                config.setProperty(ConsumerConfig.GROUP_ID_CONFIG, DEFAULT_GROUP_ID);
+                config.setProperty(ConsumerConfig.CLIENT_ID_CONFIG, "aggregator-sensors-" + counter.getAndIncrement());
+                config.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+                config.setProperty(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, "30000");
+                // при перебалансировке отзываются только переезжающие партиции, остальные продолжают работу
                 config.setProperty(
-                        ConsumerConfig.GROUP_ID_CONFIG,
-                        "consumer-client-" + counter.getAndIncrement()
+                        ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG,
+                        CooperativeStickyAssignor.class.getName()
                 );
-                config.setProperty(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, "30000");
+                config.putAll(kafka.getConsumer().getProperties());
+
+                return new KafkaConsumer<>(config);
+            }
+
+            @Override
+            public Consumer<String, SpecificRecordBase> createSnapshotConsumer() {
+                return restoreConsumer(
+                        "ru.yandex.practicum.telemetry.aggregator.config.SensorsSnapshotDeserializer",
+                        "aggregator-snapshot-restore"
+                );
+            }
+
+            @Override
+            public Consumer<String, SpecificRecordBase> createSnapshotDeltaConsumer() {
+                return restoreConsumer(
+                        "ru.yandex.practicum.telemetry.aggregator.config.SnapshotDeltaDeserializer",
+                        "aggregator-delta-restore"
+                );
+            }
+
+            private Consumer<String, SpecificRecordBase> restoreConsumer(String valueDeserializer, String clientId) {
+                Properties config = new Properties();
+                config.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.getBootstrapServers());
+                config.setProperty(
+                        ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG,
+                        "org.apache.kafka.common.serialization.StringDeserializer"
+                );
+                config.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, valueDeserializer);
+                config.setProperty(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
+                config.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+                config.setProperty(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+                config.setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "1000");
 
-                sensorConsumer = new KafkaConsumer<>(config);
+                return new KafkaConsumer<>(config);
             }
 
             @Override
-            public Producer<String, SpecificRecordBase> getProducer() {
+            public Consumer<String, SpecificRecordBase> createHubConsumer(String groupId) {
+                Properties config = new Properties();
+                config.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.getBootstrapServers());
+                config.setProperty(
+                        ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG,
+                        "org.apache.kafka.common.serialization.StringDeserializer"
+                );
+                config.setProperty(
+                        ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
+                        "ru.yandex.practicum.telemetry.aggregator.config.HubEventDeserializer"
+                );
+                config.setProperty(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+                config.setProperty(ConsumerConfig.CLIENT_ID_CONFIG, "aggregator-hubs");
+                config.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+                config.putAll(kafka.getHubs().getProperties());
+
+                return new KafkaConsumer<>(config);
+            }
+
+            @Override
+            public synchronized Producer<String, SpecificRecordBase> getProducer() {
                 if (producer == null) {
                     initProducer();
                 }
                 return producer;
             }
 
+            @Override
+            public Producer<String, SpecificRecordBase> createTransactionalProducer(String transactionalId) {
+                Properties config = producerConfig();
+                config.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, transactionalId);
+                config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true");
+                config.put(ProducerConfig.ACKS_CONFIG, "all");
+
+                Producer<String, SpecificRecordBase> transactional = new KafkaProducer<>(config);
+                transactional.initTransactions();
+                return transactional;
+            }
+
             private void initProducer() {
+                producer = new KafkaProducer<>(producerConfig());
+            }
+
+            private Properties producerConfig() {
                 Properties config = new Properties();
-                config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, DEFAULT_BOOTSTRAP_SERVERS);
+                config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.getBootstrapServers());
                 config.put(
                         ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG,
                         "org.apache.kafka.common.serialization.StringSerializer"
@@ -74,15 +142,12 @@ public class EventConfig {
                         ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
                         "ru.yandex.practicum.telemetry.aggregator.config.EventAvroSerializer"
                 );
-
-                producer = new KafkaProducer<>(config);
+                config.putAll(kafka.getProducer().getProperties());
+                return config;
             }
 
             @Override
-            public void stop() {
-                if (sensorConsumer != null) {
-                    sensorConsumer.close();
-                }
+            public synchronized void stop() {
                 if (producer != null) {
                     producer.close();
                 }
@@ -8,5 +8,7 @@ public final class EventTopic {
 
     public static final String TELEMETRY_SNAPSHOT_TOPIC = "telemetry.snapshots.v1";
 
+    public static final String TELEMETRY_SNAPSHOT_DELTA_TOPIC = "telemetry.snapshots.delta.v1";
+
 }
 
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.telemetry.aggregator.config;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+public class SensorsSnapshotDeserializer extends BaseAvroDeserializer<SensorsSnapshotAvro> {
+    public SensorsSnapshotDeserializer() {
+
+        super(SensorsSnapshotAvro.getClassSchema());
+    }
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.telemetry.aggregator.config;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+
+public class SnapshotDeltaDeserializer extends BaseAvroDeserializer<SensorsSnapshotDeltaAvro> {
+    public SnapshotDeltaDeserializer() {
+
+        super(SensorsSnapshotDeltaAvro.getClassSchema());
+    }
+}
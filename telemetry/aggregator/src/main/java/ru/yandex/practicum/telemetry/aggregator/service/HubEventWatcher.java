@@ -0,0 +1,71 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.errors.WakeupException;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceRemovedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Читает события хабов и передаёт удаления устройств в состояние агрегатора.
+ * <p>
+ * Хаб может оказаться в шарде любого обработчика, поэтому консьюмер читает все партиции в собственной
+ * группе экземпляра. Удаления для партиций без шарда ждут их назначения в {@link InMemorySensorEvent}, но только
+ * в памяти, поэтому до первого назначения процесса смещения не фиксируются: после перезапуска события
+ * перечитываются. Повторное применение безопасно: датчик с показанием новее события удаления не удаляется.
+ */
+@Slf4j
+class HubEventWatcher implements Runnable {
+
+    private final Consumer<String, SpecificRecordBase> consumer;
+    private final InMemorySensorEvent service;
+    private final String hubTopic;
+    private final Duration pollTimeout;
+
+    HubEventWatcher(Consumer<String, SpecificRecordBase> consumer,
+                    InMemorySensorEvent service,
+                    String hubTopic,
+                    Duration pollTimeout) {
+        this.consumer = consumer;
+        this.service = service;
+        this.hubTopic = hubTopic;
+        this.pollTimeout = pollTimeout;
+    }
+
+    @Override
+    public void run() {
+        try {
+            consumer.subscribe(List.of(hubTopic));
+
+            while (true) {
+                ConsumerRecords<String, SpecificRecordBase> records = consumer.poll(pollTimeout);
+                for (ConsumerRecord<String, SpecificRecordBase> record : records) {
+                    HubEventAvro event = (HubEventAvro) record.value();
+                    if (event.getPayload() instanceof DeviceRemovedEventAvro removed) {
+                        log.info("Удаление датчика {} хаба {}", removed.getId(), event.getHubId());
+                        service.removeSensor(event.getHubId(), removed.getId(), event.getTimestamp());
+                    }
+                }
+                if (!records.isEmpty() && service.isAssigned()) {
+                    consumer.commitAsync();
+                }
+            }
+
+        } catch (WakeupException ignored) {
+        } catch (Exception e) {
+            log.error("Ошибка во время обработки событий хабов", e);
+        } finally {
+            consumer.close();
+        }
+    }
+
+    void wakeup() {
+        consumer.wakeup();
+    }
+}
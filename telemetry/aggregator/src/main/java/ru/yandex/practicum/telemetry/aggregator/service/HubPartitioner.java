@@ -0,0 +1,18 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Партиция хаба в топике с ключом hubId: так же её выбирает продюсер коллектора для ключа-строки.
+ */
+final class HubPartitioner {
+
+    private HubPartitioner() {
+    }
+
+    static int partition(String hubId, int partitionCount) {
+        return Utils.toPositive(Utils.murmur2(hubId.getBytes(StandardCharsets.UTF_8))) % partitionCount;
+    }
+}
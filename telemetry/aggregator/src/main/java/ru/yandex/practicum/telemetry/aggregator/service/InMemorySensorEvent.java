@@ -1,56 +1,498 @@
 package ru.yandex.practicum.telemetry.aggregator.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+import ru.yandex.practicum.telemetry.aggregator.service.SnapshotStateRestorer.RestoredHub;
+import ru.yandex.practicum.telemetry.aggregator.service.state.SensorReading;
+import ru.yandex.practicum.telemetry.aggregator.service.state.SensorStateStore;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Состояние снапшотов, разбитое на шарды по партициям топика датчиков.
+ * <p>
+ * Шард принадлежит тому обработчику, которому сейчас назначена партиция, и изменяется только из его потока.
+ * При отзыве партиции шард откладывается вместе со смещением, до которого он построен: если партиция
+ * вернётся в этот же процесс с тем же смещением, шард подхватывается. Так же подхватывается хранилище с диска,
+ * если его контрольная точка совпадает с позицией партиции. Иначе шард строится заново по топику снапшотов,
+ * в том числе при старте и при переезде партиции из другого процесса.
+ * <p>
+ * Показания хранит {@link SensorStateStore} из {@code aggregator.state.store}; выпущенные им снапшоты
+ * не изменяются.
+ * <p>
+ * Хабы шарда упорядочены по последнему событию. Хаб без событий дольше {@code aggregator.state.hub-ttl}
+ * удаляется. {@code aggregator.state.max-hubs} делится поровну между назначенными шардами, и шард сверх своей доли
+ * вытесняет собственные самые давние хабы. Удаление датчика по событию хаба ставится в очередь шарда партиции хаба
+ * и применяется потоком-владельцем. Удаление для партиции, которой в процессе нет шарда (до первого назначения или
+ * во время перебалансировки), ждёт в ограниченной очереди {@code aggregator.state.pending-removals} и передаётся
+ * шарду, когда партиция будет назначена.
+ */
 @Slf4j
 @Component
 public class InMemorySensorEvent {
 
-    private final Map<String, SensorsSnapshotAvro> snapshots = new ConcurrentHashMap<>();
+    private static final Duration PARKED_SHARD_TTL = Duration.ofMinutes(5);
+
+    private final SensorChangeDetector changeDetector;
+    private final SensorStateStoreFactory storeFactory;
+    private final SnapshotStateRestorer restorer;
+    private final SnapshotEmitter emitter;
+    private final long hubTtlNanos;
+    private final int maxHubs;
+    private final long evictionIntervalNanos;
+    private final int maxPendingRemovals;
+
+    private final Map<TopicPartition, Shard> shards = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, ParkedShard> parked = new ConcurrentHashMap<>();
+    // удаления хабов партиций без шарда; под собственным монитором вместе с раздачей удалений по шардам
+    private final Deque<SensorRemovalRequest> pendingRemovals = new ArrayDeque<>();
+    // число партиций топика датчиков по последнему назначению, нужно для поиска шарда хаба
+    private volatile int partitionCount;
+
+    private final AtomicLong hubs = new AtomicLong();
+    private final AtomicLong sensors = new AtomicLong();
+    private final Counter evictedIdle;
+    private final Counter evictedCapacity;
+    private final Counter removed;
+    private final Counter removalsDropped;
+    private final Counter restoredHubs;
+
+    public InMemorySensorEvent(SensorChangeDetector changeDetector,
+                               SensorStateStoreFactory storeFactory,
+                               SnapshotStateRestorer restorer,
+                               SnapshotEmitter emitter,
+                               AggregatorProperties properties,
+                               MeterRegistry registry) {
+        this.changeDetector = changeDetector;
+        this.storeFactory = storeFactory;
+        this.restorer = restorer;
+        this.emitter = emitter;
+        this.hubTtlNanos = properties.getState().getHubTtl().toNanos();
+        this.maxHubs = properties.getState().getMaxHubs();
+        this.evictionIntervalNanos = properties.getState().getEvictionInterval().toNanos();
+        this.maxPendingRemovals = Math.max(1, properties.getState().getPendingRemovals());
+
+        Gauge.builder("aggregator.state.hubs", hubs::get)
+                .description("Хабы в состоянии агрегатора")
+                .register(registry);
+        Gauge.builder("aggregator.state.sensors", sensors::get)
+                .description("Датчики в состоянии агрегатора")
+                .register(registry);
+        Gauge.builder("aggregator.state.bytes", this::estimatedBytes)
+                .description("Оценка памяти, занятой шардами, в куче и вне её")
+                .baseUnit("bytes")
+                .tag("store", properties.getState().getStore().name().toLowerCase())
+                .register(registry);
+        this.evictedIdle = evicted(registry, "idle");
+        this.evictedCapacity = evicted(registry, "capacity");
+        this.removed = Counter.builder("aggregator.state.sensors.removed")
+                .description("Датчики, удалённые по событию хаба")
+                .register(registry);
+        this.restoredHubs = Counter.builder("aggregator.restore.hubs")
+                .description("Хабы, загруженные в шарды из топика снапшотов")
+                .register(registry);
+        this.removalsDropped = Counter.builder("aggregator.state.removals.dropped")
+                .description("Удаления датчиков, вытесненные из очереди ожидания назначения партиции")
+                .register(registry);
+        Gauge.builder("aggregator.state.removals.pending", this::pendingRemovalCount)
+                .description("Удаления датчиков, ждущие назначения партиции хаба")
+                .register(registry);
+    }
+
+    /**
+     * Назначает партиции обработчику. Шард партиции подхватывается из отложенных или из хранилища, если он построен
+     * до её позиции; остальные шарды создаются заново и заполняются снапшотами хабов из топика снапшотов.
+     *
+     * @param positions      позиции назначенных партиций
+     * @param partitionCount число партиций топика датчиков
+     */
+    public void assign(Map<TopicPartition, Long> positions, int partitionCount) {
+        evictExpired();
+        this.partitionCount = partitionCount;
+
+        List<TopicPartition> cold = new ArrayList<>();
+        positions.forEach((partition, position) -> {
+            if (!assign(partition, position)) {
+                cold.add(partition);
+            }
+        });
+        routePendingRemovals();
+        if (cold.isEmpty()) {
+            return;
+        }
+
+        Optional<Map<TopicPartition, List<RestoredHub>>> snapshots = restorer.restore(cold, partitionCount);
+        for (TopicPartition partition : cold) {
+            List<RestoredHub> restored = snapshots
+                    .map(byPartition -> byPartition.getOrDefault(partition, List.of()))
+                    .orElse(List.of());
+            Shard shard = shards.get(partition);
+            // без восстановления новый хаб шарда может оказаться хабом, состояние которого шард не знает,
+            // пока не пройдёт TTL: хаб, молчавший дольше, не восстанавливался бы и при успешном восстановлении
+            shard.complete = snapshots.isPresent();
+            load(shard, restored);
+            log.info("Партиция {} назначена, шард создан заново: загружено хабов={}", partition, shard.hubs.size());
+        }
+    }
+
+    /**
+     * @return {@code false}, если шард создан пустым
+     */
+    private boolean assign(TopicPartition partition, long position) {
+        ParkedShard parkedShard = parked.remove(partition);
+        if (parkedShard != null && parkedShard.position() == position) {
+            shards.put(partition, parkedShard.shard());
+            log.info("Партиция {} назначена, шард подхвачен: хабов={}", partition, parkedShard.shard().hubs.size());
+            return true;
+        }
+        if (parkedShard != null) {
+            release(parkedShard.shard());
+        }
+
+        Shard shard = new Shard(storeFactory.open(partition));
+        // удаления датчиков ставятся в очередь шарда, пока он восстанавливается
+        shards.put(partition, shard);
+        if (shard.store.position() == position) {
+            long now = System.nanoTime();
+            for (String hubId : shard.store.hubIds()) {
+                shard.hubs.put(hubId, new HubEntry(now));
+                emitter.track(hubId, true);
+            }
+            hubs.addAndGet(shard.hubs.size());
+            sensors.addAndGet(shard.store.sensorCount());
+            log.info("Партиция {} назначена, шард загружен из хранилища: хабов={}", partition, shard.hubs.size());
+            return true;
+        }
+        shard.store.clear();
+        return false;
+    }
+
+    /**
+     * Топик снапшотов хранит последний снапшот каждого хаба, сколько бы тот ни молчал. Хаб без событий дольше TTL
+     * не загружается, а для остальных время последнего события берётся из снапшота, а не из момента загрузки.
+     */
+    private void load(Shard shard, List<RestoredHub> restored) {
+        long now = System.nanoTime();
+        Instant wallNow = Instant.now();
+        // давние хабы встают в начало порядка доступа и вытесняются первыми
+        List<RestoredHub> ordered = new ArrayList<>(restored);
+        ordered.sort(Comparator.comparing(hub -> hub.snapshot().getTimestamp()));
+        // сверх доли шарда загружаются только самые свежие хабы
+        int skip = Math.max(0, ordered.size() - capacity());
+        for (RestoredHub hub : ordered.subList(skip, ordered.size())) {
+            SensorsSnapshotAvro snapshot = hub.snapshot();
+            long idleNanos = Math.max(0, Duration.between(snapshot.getTimestamp(), wallNow).toNanos());
+            if (idleNanos >= hubTtlNanos) {
+                continue;
+            }
+            shard.store.load(snapshot);
+            shard.hubs.put(snapshot.getHubId(), new HubEntry(now - idleNanos));
+            emitter.track(snapshot.getHubId(), hub.complete());
+            hubs.incrementAndGet();
+            restoredHubs.increment();
+            sensors.addAndGet(snapshot.getSensorsState().size());
+        }
+        evictOverCapacity(shard);
+    }
+
+    public void revoke(TopicPartition partition, long position) {
+        Shard shard = shards.remove(partition);
+        if (shard != null) {
+            shard.store.checkpoint(position);
+            parked.put(partition, new ParkedShard(shard, position, System.nanoTime()));
+            log.info("Партиция {} отозвана, шард отложен на смещении {}", partition, position);
+        }
+    }
+
+    public void drop(TopicPartition partition) {
+        Shard shard = shards.remove(partition);
+        if (shard != null) {
+            release(shard);
+        }
+        ParkedShard parkedShard = parked.remove(partition);
+        if (parkedShard != null) {
+            release(parkedShard.shard());
+        }
+        log.info("Партиция {} потеряна, шард удалён", partition);
+    }
+
+    /**
+     * Отмечает, что состояние шарда соответствует зафиксированной позиции партиции.
+     */
+    public void checkpoint(TopicPartition partition, long position) {
+        Shard shard = shards.get(partition);
+        if (shard != null) {
+            shard.store.checkpoint(position);
+        }
+    }
+
+    public void close() {
+        shards.values().forEach(shard -> shard.store.close());
+        parked.values().forEach(parkedShard -> parkedShard.shard().store.close());
+    }
+
+    public Optional<SensorsSnapshotAvro> updateState(TopicPartition partition, SensorEventAvro event) {
+        Shard shard = shardOf(partition);
 
-    public Optional<SensorsSnapshotAvro> updateState(SensorEventAvro event) {
         String hubId = event.getHubId();
         String sensorId = event.getId();
 
-        SensorsSnapshotAvro snapshot = snapshots.get(hubId);
-        if (snapshot == null) {
-            SensorsSnapshotAvro created = addSnapshot(event);
-            return Optional.of(created);
+        HubEntry entry = shard.hubs.get(hubId);
+        if (entry == null) {
+            hubs.incrementAndGet();
+            if (!shard.complete && System.nanoTime() - shard.createdAt >= hubTtlNanos) {
+                shard.complete = true;
+            }
+            emitter.track(hubId, shard.complete);
+            entry = new HubEntry(System.nanoTime());
+            shard.hubs.put(hubId, entry);
+            evictOverCapacity(shard);
         }
+        entry.lastSeen = System.nanoTime();
 
-        Map<String, SensorStateAvro> sensorsState = snapshot.getSensorsState();
-        SensorStateAvro oldState = sensorsState.get(sensorId);
+        // сравнение идёт на примитивах; Avro-объект состояния создаётся, только если снапшот изменился
+        if (shard.store.read(hubId, sensorId, shard.stored)) {
+            SensorReading current = shard.incoming.set(event.getTimestamp(), event.getPayload());
+            if (shard.stored.timestamp() > current.timestamp()) {
+                return Optional.empty();
+            }
+            if (!changeDetector.isChanged(shard.stored, current)) {
+                return Optional.empty();
+            }
+        } else {
+            sensors.incrementAndGet();
+        }
 
-        if (oldState == null) {
-            SensorStateAvro newState = buildState(event);
-            snapshot.setTimestamp(event.getTimestamp());
-            sensorsState.put(sensorId, newState);
-            return Optional.of(snapshot);
+        return Optional.of(shard.store.update(hubId, sensorId, buildState(event), event.getTimestamp()));
+    }
+
+    /**
+     * Вызывается из потока событий хабов. Шарды меняет только их владелец, поэтому удаление ставится
+     * в очередь шарда партиции хаба и применяется в {@link #applyRemovals}. Если шарда партиции хаба нет,
+     * удаление ждёт её назначения: партиция может переезжать в этот процесс.
+     */
+    public void removeSensor(String hubId, String sensorId, Instant removedAt) {
+        SensorRemovalRequest request = new SensorRemovalRequest(hubId, sensorId, removedAt);
+        synchronized (pendingRemovals) {
+            if (!route(request)) {
+                addPending(request);
+            }
         }
+    }
+
+    /**
+     * Процесс получил первое назначение, и удаления датчиков больше не теряются до появления шардов.
+     */
+    public boolean isAssigned() {
+        return partitionCount > 0;
+    }
 
-        if (oldState.getTimestamp().isAfter(event.getTimestamp())) {
-            return Optional.empty();
+    private void routePendingRemovals() {
+        synchronized (pendingRemovals) {
+            pendingRemovals.removeIf(this::route);
         }
+    }
 
-        String oldDataStr = oldState.getData().toString();
-        String newDataStr = event.getPayload().toString();
-        if (oldDataStr.equals(newDataStr)) {
-            return Optional.empty();
+    /**
+     * @return {@code false}, если шарда партиции хаба нет ни среди назначенных, ни среди отложенных
+     */
+    private boolean route(SensorRemovalRequest request) {
+        int count = partitionCount;
+        if (count == 0) {
+            return false;
+        }
+        int owner = HubPartitioner.partition(request.hubId(), count);
+        boolean routed = false;
+        for (Map.Entry<TopicPartition, Shard> entry : shards.entrySet()) {
+            if (entry.getKey().partition() == owner) {
+                entry.getValue().removals.add(request);
+                routed = true;
+            }
         }
+        for (Map.Entry<TopicPartition, ParkedShard> entry : parked.entrySet()) {
+            if (entry.getKey().partition() == owner) {
+                entry.getValue().shard().removals.add(request);
+                routed = true;
+            }
+        }
+        return routed;
+    }
 
-        SensorStateAvro newState = buildState(event);
-        snapshot.setTimestamp(event.getTimestamp());
-        sensorsState.put(sensorId, newState);
-        return Optional.of(snapshot);
+    private void addPending(SensorRemovalRequest request) {
+        if (pendingRemovals.size() >= maxPendingRemovals) {
+            pendingRemovals.poll();
+            removalsDropped.increment();
+        }
+        pendingRemovals.add(request);
+    }
+
+    private int pendingRemovalCount() {
+        synchronized (pendingRemovals) {
+            return pendingRemovals.size();
+        }
+    }
+
+    public boolean hasRemovals(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            Shard shard = shards.get(partition);
+            if (shard != null && !shard.removals.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Применяет накопленные удаления датчиков к шардам партиций и возвращает снапшоты для выпуска.
+     * Показание новее события удаления означает, что датчик добавлен заново, и удаление пропускается.
+     */
+    public List<SensorRemoval> applyRemovals(Collection<TopicPartition> partitions) {
+        List<SensorRemoval> result = new ArrayList<>();
+        for (TopicPartition partition : partitions) {
+            Shard shard = shards.get(partition);
+            if (shard == null) {
+                continue;
+            }
+
+            SensorRemovalRequest request;
+            while ((request = shard.removals.poll()) != null) {
+                HubEntry entry = shard.hubs.get(request.hubId());
+                if (entry == null
+                        || !shard.store.read(request.hubId(), request.sensorId(), shard.stored)
+                        || shard.stored.timestamp() > request.removedAt().toEpochMilli()) {
+                    continue;
+                }
+
+                SensorsSnapshotAvro snapshot = shard.store.remove(
+                        request.hubId(), request.sensorId(), request.removedAt());
+                // get() уже переставил хаб в конец порядка доступа
+                entry.lastSeen = System.nanoTime();
+                sensors.decrementAndGet();
+                removed.increment();
+                result.add(new SensorRemoval(partition, snapshot, request.sensorId()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Удаляет хабы без событий дольше TTL. Каждый шард просматривается не чаще {@code eviction-interval}
+     * и только от начала до первого живого хаба.
+     */
+    public void evictIdle(Collection<TopicPartition> partitions) {
+        long now = System.nanoTime();
+        for (TopicPartition partition : partitions) {
+            Shard shard = shards.get(partition);
+            if (shard == null || now - shard.lastEviction < evictionIntervalNanos) {
+                continue;
+            }
+            shard.lastEviction = now;
+
+            Iterator<Map.Entry<String, HubEntry>> iterator = shard.hubs.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, HubEntry> entry = iterator.next();
+                if (now - entry.getValue().lastSeen < hubTtlNanos) {
+                    break;
+                }
+                iterator.remove();
+                forget(shard, entry.getKey());
+                evictedIdle.increment();
+            }
+        }
+    }
+
+    private void evictOverCapacity(Shard shard) {
+        // только что добавленный хаб стоит последним и не вытесняется
+        int capacity = capacity();
+        Iterator<String> iterator = shard.hubs.keySet().iterator();
+        while (shard.hubs.size() > capacity && shard.hubs.size() > 1) {
+            String hubId = iterator.next();
+            iterator.remove();
+            forget(shard, hubId);
+            evictedCapacity.increment();
+        }
+    }
+
+    /**
+     * Доля {@code max-hubs} одного назначенного шарда. Отложенные шарды не учитываются: их держит TTL.
+     */
+    private int capacity() {
+        return Math.max(1, maxHubs / Math.max(1, shards.size()));
+    }
+
+    private Shard shardOf(TopicPartition partition) {
+        Shard shard = shards.get(partition);
+        if (shard == null) {
+            throw new IllegalStateException("Партиция " + partition + " не назначена");
+        }
+        return shard;
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        parked.values().removeIf(parkedShard -> {
+            if (now - parkedShard.parkedAt() <= PARKED_SHARD_TTL.toNanos()) {
+                return false;
+            }
+            release(parkedShard.shard());
+            return true;
+        });
+    }
+
+    private void release(Shard shard) {
+        // неприменённые удаления вернутся в шард, если партиция снова будет назначена процессу
+        synchronized (pendingRemovals) {
+            SensorRemovalRequest request;
+            while ((request = shard.removals.poll()) != null) {
+                addPending(request);
+            }
+        }
+        shard.hubs.keySet().forEach(emitter::forget);
+        hubs.addAndGet(-shard.hubs.size());
+        sensors.addAndGet(-shard.store.sensorCount());
+        shard.hubs.clear();
+        shard.store.clear();
+        shard.store.close();
+    }
+
+    private void forget(Shard shard, String hubId) {
+        emitter.forget(hubId);
+        hubs.decrementAndGet();
+        sensors.addAndGet(-shard.store.evict(hubId));
+    }
+
+    private double estimatedBytes() {
+        long bytes = 0;
+        for (Shard shard : shards.values()) {
+            bytes += shard.store.estimatedBytes();
+        }
+        for (ParkedShard parkedShard : parked.values()) {
+            bytes += parkedShard.shard().store.estimatedBytes();
+        }
+        return bytes;
     }
 
     private SensorStateAvro buildState(SensorEventAvro event) {
@@ -60,20 +502,47 @@ public class InMemorySensorEvent {
                 .build();
     }
 
-    private SensorsSnapshotAvro addSnapshot(SensorEventAvro record) {
-        String hubId = record.getHubId();
-        String sensorId = record.getId();
+    private static Counter evicted(MeterRegistry registry, String reason) {
+        return Counter.builder("aggregator.state.hubs.evicted")
+                .description("Хабы, вытесненные из состояния")
+                .tag("reason", reason)
+                .register(registry);
+    }
 
-        Map<String, SensorStateAvro> sensorsState = new HashMap<>();
-        sensorsState.put(sensorId, buildState(record));
+    public record SensorRemoval(TopicPartition partition, SensorsSnapshotAvro snapshot, String sensorId) {
+    }
 
-        SensorsSnapshotAvro snapshot = SensorsSnapshotAvro.newBuilder()
-                .setTimestamp(record.getTimestamp())
-                .setHubId(hubId)
-                .setSensorsState(sensorsState)
-                .build();
+    private record SensorRemovalRequest(String hubId, String sensorId, Instant removedAt) {
+    }
+
+    private record ParkedShard(Shard shard, long position, long parkedAt) {
+    }
 
-        snapshots.put(hubId, snapshot);
-        return snapshot;
+    private static final class Shard {
+
+        private final SensorStateStore store;
+        // порядок доступа: в начале хабы, дольше всех не получавшие событий
+        private final Map<String, HubEntry> hubs = new LinkedHashMap<>(16, 0.75f, true);
+        private final Queue<SensorRemovalRequest> removals = new ConcurrentLinkedQueue<>();
+        // переиспользуются потоком-владельцем при сравнении показаний
+        private final SensorReading stored = new SensorReading();
+        private final SensorReading incoming = new SensorReading();
+        private final long createdAt = System.nanoTime();
+        private long lastEviction = createdAt;
+        // шард знает всё состояние своих хабов: построен из хранилища, восстановлен из топика или живёт дольше TTL
+        private boolean complete = true;
+
+        private Shard(SensorStateStore store) {
+            this.store = store;
+        }
+    }
+
+    private static final class HubEntry {
+
+        private long lastSeen;
+
+        private HubEntry(long lastSeen) {
+            this.lastSeen = lastSeen;
+        }
     }
 }
@@ -0,0 +1,250 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Обработчик в режиме конвейера: поток чтения только опрашивает консьюмер и раскладывает записи
+ * по полосам {@link SnapshotLane}, а состояние и снапшоты ведут потоки полос.
+ * <p>
+ * Партиция назначается наименее загруженной полосе, поэтому порядок записей хаба сохраняется.
+ * Фиксируются только оффсеты, опубликованные полосами. На ребалансе и остановке поток чтения
+ * дожидается, пока полосы обработают всё переданное, и только потом фиксирует оффсеты.
+ */
+@Slf4j
+class PipelinedSnapshotWorker implements Runnable, ConsumerRebalanceListener {
+
+    private final Consumer<String, SpecificRecordBase> consumer;
+    private final Producer<String, SpecificRecordBase> producer;
+    private final InMemorySensorEvent service;
+    private final String sensorTopic;
+    private final Duration pollTimeout;
+    private final List<SnapshotLane> lanes;
+    private final List<Thread> laneThreads = new ArrayList<>();
+
+    private final Map<TopicPartition, OffsetAndMetadata> committable = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, SnapshotLane> laneOf = new HashMap<>();
+
+    PipelinedSnapshotWorker(Consumer<String, SpecificRecordBase> consumer,
+                            Producer<String, SpecificRecordBase> producer,
+                            InMemorySensorEvent service,
+                            String sensorTopic,
+                            Duration pollTimeout,
+                            LaneFactory laneFactory,
+                            int laneCount,
+                            String name) {
+        this.consumer = consumer;
+        this.producer = producer;
+        this.service = service;
+        this.sensorTopic = sensorTopic;
+        this.pollTimeout = pollTimeout;
+        this.lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            SnapshotLane lane = laneFactory.create(committable);
+            lanes.add(lane);
+            laneThreads.add(new Thread(lane, name + "-lane-" + i));
+        }
+    }
+
+    @Override
+    public void run() {
+        boolean stopped = false;
+        laneThreads.forEach(Thread::start);
+        try {
+            consumer.subscribe(List.of(sensorTopic), this);
+
+            while (true) {
+                ConsumerRecords<String, SpecificRecordBase> records = consumer.poll(pollTimeout);
+                lanes.forEach(SnapshotLane::checkFailure);
+
+                for (ConsumerRecord<String, SpecificRecordBase> record : records) {
+                    laneOf.get(new TopicPartition(record.topic(), record.partition())).submit(record);
+                }
+                lanes.forEach(SnapshotLane::wakeup);
+
+                if (!committable.isEmpty()) {
+                    consumer.commitAsync(new HashMap<>(committable), this::onCommitComplete);
+                }
+            }
+
+        } catch (WakeupException ignored) {
+            stopped = true;
+        } catch (Exception e) {
+            log.error("Ошибка во время обработки событий от датчиков", e);
+        } finally {
+            try {
+                commitOnShutdown(stopped);
+            } catch (Exception e) {
+                log.warn("Ошибка фиксации при остановке обработчика", e);
+            } finally {
+                stopLanes();
+                consumer.close();
+            }
+        }
+    }
+
+    void wakeup() {
+        consumer.wakeup();
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+
+        // снапшоты по уже переданным полосам записям должны уйти раньше, чем партицию получит другой обработчик
+        awaitLanes((lane, owned) -> lane.flush(owned), partitions);
+        producer.flush();
+
+        Map<TopicPartition, OffsetAndMetadata> revoked = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            OffsetAndMetadata offset = committable.remove(partition);
+            if (offset != null) {
+                revoked.put(partition, offset);
+            }
+        }
+        if (!revoked.isEmpty()) {
+            consumer.commitSync(revoked);
+        }
+
+        for (TopicPartition partition : partitions) {
+            laneOf.remove(partition);
+            service.revoke(partition, consumer.position(partition));
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        Map<TopicPartition, Long> positions = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            positions.put(partition, consumer.position(partition));
+        }
+        service.assign(positions, consumer.partitionsFor(sensorTopic).size());
+
+        for (TopicPartition partition : partitions) {
+            SnapshotLane lane = leastLoadedLane();
+            laneOf.put(partition, lane);
+            lane.assign(partition);
+        }
+    }
+
+    @Override
+    public void onPartitionsLost(Collection<TopicPartition> partitions) {
+        awaitLanes((lane, owned) -> lane.discard(owned), partitions);
+        for (TopicPartition partition : partitions) {
+            committable.remove(partition);
+            laneOf.remove(partition);
+            service.drop(partition);
+        }
+    }
+
+    private void commitOnShutdown(boolean clean) {
+        awaitLanes((lane, owned) -> lane.flushAll(), laneOf.keySet());
+        producer.flush();
+        if (!committable.isEmpty()) {
+            consumer.commitSync(new HashMap<>(committable));
+        }
+
+        if (clean) {
+            for (TopicPartition partition : consumer.assignment()) {
+                service.checkpoint(partition, consumer.position(partition));
+            }
+        }
+    }
+
+    /**
+     * Выполняет действие в потоке каждой полосы после всех ранее переданных ей записей и ждёт завершения.
+     * Полоса получает только свои партиции из {@code partitions}.
+     */
+    private void awaitLanes(BiConsumer<SnapshotLane, Collection<TopicPartition>> action,
+                            Collection<TopicPartition> partitions) {
+        Map<SnapshotLane, List<TopicPartition>> owned = new HashMap<>();
+        lanes.forEach(lane -> owned.put(lane, new ArrayList<>()));
+        for (TopicPartition partition : partitions) {
+            SnapshotLane lane = laneOf.get(partition);
+            if (lane != null) {
+                owned.get(lane).add(partition);
+            }
+        }
+
+        CountDownLatch done = new CountDownLatch(lanes.size());
+        for (SnapshotLane lane : lanes) {
+            lane.submit((Runnable) () -> {
+                try {
+                    action.accept(lane, owned.get(lane));
+                } finally {
+                    done.countDown();
+                }
+            });
+            lane.wakeup();
+        }
+
+        try {
+            while (!done.await(pollTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                lanes.forEach(SnapshotLane::checkFailure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Прервано ожидание полос конвейера", e);
+        }
+    }
+
+    private SnapshotLane leastLoadedLane() {
+        Map<SnapshotLane, Integer> load = new HashMap<>();
+        lanes.forEach(lane -> load.put(lane, 0));
+        laneOf.values().forEach(lane -> load.merge(lane, 1, Integer::sum));
+        SnapshotLane best = lanes.get(0);
+        for (SnapshotLane lane : lanes) {
+            if (load.get(lane) < load.get(best)) {
+                best = lane;
+            }
+        }
+        return best;
+    }
+
+    private void stopLanes() {
+        lanes.forEach(SnapshotLane::stop);
+        try {
+            for (Thread thread : laneThreads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void onCommitComplete(Map<TopicPartition, OffsetAndMetadata> offsets, Exception exception) {
+        if (exception != null) {
+            log.warn("Ошибка во время фиксации оффсетов: {}", offsets, exception);
+        }
+    }
+
+    @FunctionalInterface
+    interface LaneFactory {
+
+        SnapshotLane create(Map<TopicPartition, OffsetAndMetadata> committable);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+import ru.yandex.practicum.telemetry.aggregator.service.state.SensorReading;
+
+/**
+ * Решает, отличается ли новое показание датчика от сохранённого настолько, чтобы выпустить новый снапшот.
+ * Сравниваются только поля показаний; числовые поля — с учётом зоны нечувствительности из настроек.
+ */
+@Component
+@RequiredArgsConstructor
+public class SensorChangeDetector {
+
+    private final AggregatorProperties properties;
+
+    public boolean isChanged(SensorReading old, SensorReading current) {
+        if (old.type() != current.type()) {
+            // сменился тип датчика
+            return true;
+        }
+
+        AggregatorProperties.Deadband deadband = properties.getDeadband();
+        return switch (current.type()) {
+            case SensorReading.CLIMATE -> exceeds(old.first(), current.first(), deadband.getTemperature())
+                    || exceeds(old.second(), current.second(), deadband.getHumidity())
+                    || exceeds(old.third(), current.third(), deadband.getCo2Level());
+            case SensorReading.LIGHT -> exceeds(old.second(), current.second(), deadband.getLuminosity())
+                    || exceeds(old.first(), current.first(), deadband.getLinkQuality());
+            case SensorReading.MOTION -> old.flag() != current.flag()
+                    || exceeds(old.first(), current.first(), deadband.getLinkQuality())
+                    || exceeds(old.second(), current.second(), deadband.getVoltage());
+            case SensorReading.SWITCH -> old.flag() != current.flag();
+            // зона в °F пересчитывается из зоны в °C с округлением вверх
+            case SensorReading.TEMPERATURE -> exceeds(old.first(), current.first(), deadband.getTemperature())
+                    || exceeds(old.second(), current.second(), (deadband.getTemperature() * 9 + 4) / 5);
+            default -> true;
+        };
+    }
+
+    private static boolean exceeds(int old, int current, int deadband) {
+        long diff = Math.abs((long) current - old);
+        return diff != 0 && diff >= deadband;
+    }
+}
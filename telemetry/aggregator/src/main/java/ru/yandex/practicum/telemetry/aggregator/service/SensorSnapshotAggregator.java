@@ -1,26 +1,17 @@
 package ru.yandex.practicum.telemetry.aggregator.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.specific.SpecificRecordBase;
-import org.apache.kafka.clients.consumer.Consumer;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.OffsetAndMetadata;
-import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.common.TopicPartition;
-import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.clients.producer.Producer;
 import org.springframework.stereotype.Component;
-import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
-import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
 import ru.yandex.practicum.telemetry.aggregator.config.EventClient;
-import ru.yandex.practicum.telemetry.aggregator.config.EventTopic;
 
-import java.time.Duration;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
 
 @Slf4j
 @Component
@@ -29,80 +20,131 @@ public class SensorSnapshotAggregator {
 
     private final EventClient client;
     private final InMemorySensorEvent service;
+    private final AggregatorProperties properties;
+    private final SnapshotEmitter emitter;
+    private final MeterRegistry registry;
 
-    private final Map<TopicPartition, OffsetAndMetadata> currentOffsets = new HashMap<>();
+    // остановка обработчика: wakeup его консьюмера
+    private final List<Runnable> wakeups = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private HubEventWatcher hubWatcher;
 
     public void start() {
-        Consumer<String, SpecificRecordBase> consumer = client.getSensorConsumer();
+        AggregatorProperties.Kafka kafka = properties.getKafka();
+        int count = Math.max(1, properties.getWorkers());
 
-        try {
-            consumer.subscribe(List.of(EventTopic.TELEMETRY_SENSOR_TOPIC));
-
-            int count = 0;
-
-            while (true) {
-                ConsumerRecords<String, SpecificRecordBase> records =
-                        consumer.poll(Duration.ofMillis(100));
-
-                for (ConsumerRecord<String, SpecificRecordBase> record : records) {
-                    log.info("Обновление снапшота");
-
-                    Optional<SensorsSnapshotAvro> snapshotAvro =
-                            service.updateState((SensorEventAvro) record.value());
+        boolean transactional = properties.getTransactions().isEnabled();
+        boolean pipelined = properties.getPipeline().isEnabled();
+        if (transactional && pipelined) {
+            throw new IllegalStateException("Конвейерный режим несовместим с транзакциями");
+        }
+        Counter processed = Counter.builder("aggregator.records.processed")
+                .description("Обработанные события датчиков")
+                .tag("delivery", transactional ? "exactly-once" : "at-least-once")
+                .register(registry);
+
+        for (int i = 0; i < count; i++) {
+            String name = "aggregator-worker-" + i;
+            Runnable worker;
+            if (pipelined) {
+                worker = pipelinedWorker(name, processed);
+            } else if (transactional) {
+                worker = worker(client.createTransactionalProducer(transactionalId(i)), true, processed);
+            } else {
+                worker = worker(client.getProducer(), false, processed);
+            }
+            threads.add(new Thread(worker, name));
+        }
 
-                    if (snapshotAvro.isEmpty()) {
-                        log.info("Обновление снапшота не произошло.");
-                    } else {
-                        SensorsSnapshotAvro snapshot = snapshotAvro.get();
-                        log.info("Новый снапшот: {}", snapshot);
+        hubWatcher = new HubEventWatcher(
+                client.createHubConsumer("telemetry.aggregator.hubs." + properties.resolveInstanceId()),
+                service,
+                kafka.getHubs().getTopic(),
+                kafka.getHubs().getPollTimeout()
+        );
+        Thread hubThread = new Thread(hubWatcher, "aggregator-hubs");
 
-                        ProducerRecord<String, SpecificRecordBase> snapshotRecord =
-                                new ProducerRecord<>(
-                                        EventTopic.TELEMETRY_SNAPSHOT_TOPIC,
-                                        snapshot.getHubId(),
-                                        snapshot
-                                );
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
 
-                        client.getProducer().send(snapshotRecord);
-                        log.info("Снапшот отправлен в топик {}", EventTopic.TELEMETRY_SNAPSHOT_TOPIC);
-                    }
+        log.info("Запуск агрегатора: обработчиков={}, транзакции={}, конвейер={}", count, transactional, pipelined);
+        hubThread.start();
+        threads.forEach(Thread::start);
+        awaitWorkers();
+    }
 
-                    manageOffsets(record, count, consumer);
-                    count++;
-                }
+    private void shutdown() {
+        hubWatcher.wakeup();
+        wakeups.forEach(Runnable::run);
+        awaitWorkers();
+        service.close();
+        client.stop();
+    }
 
-                consumer.commitAsync();
-            }
+    private Runnable worker(Producer<String, SpecificRecordBase> producer, boolean transactional, Counter processed) {
+        AggregatorProperties.Kafka kafka = properties.getKafka();
+        SensorSnapshotWorker worker = new SensorSnapshotWorker(
+                client.createSensorConsumer(),
+                producer,
+                transactional,
+                coalescer(producer),
+                service,
+                kafka.getConsumer().getTopic(),
+                kafka.getConsumer().getPollTimeout(),
+                processed
+        );
+        wakeups.add(worker::wakeup);
+        return worker;
+    }
 
-        } catch (WakeupException ignored) {
-        } catch (Exception e) {
-            log.error("Ошибка во время обработки событий от датчиков", e);
-        } finally {
-            try {
-                client.getProducer().flush();
-                if (!currentOffsets.isEmpty()) {
-                    consumer.commitSync(currentOffsets);
-                }
-            } finally {
-                client.stop();
-            }
-        }
+    private Runnable pipelinedWorker(String name, Counter processed) {
+        AggregatorProperties.Kafka kafka = properties.getKafka();
+        AggregatorProperties.Pipeline pipeline = properties.getPipeline();
+        Producer<String, SpecificRecordBase> producer = client.getProducer();
+        PipelinedSnapshotWorker worker = new PipelinedSnapshotWorker(
+                client.createSensorConsumer(),
+                producer,
+                service,
+                kafka.getConsumer().getTopic(),
+                kafka.getConsumer().getPollTimeout(),
+                committable -> new SnapshotLane(
+                        pipeline.getQueueCapacity(),
+                        coalescer(producer),
+                        service,
+                        kafka.getConsumer().getPollTimeout(),
+                        processed,
+                        committable
+                ),
+                Math.max(1, pipeline.getLanes()),
+                name
+        );
+        wakeups.add(worker::wakeup);
+        return worker;
     }
 
-    private void manageOffsets(ConsumerRecord<String, SpecificRecordBase> record,
-                               int count,
-                               Consumer<String, SpecificRecordBase> consumer) {
-        currentOffsets.put(
-                new TopicPartition(record.topic(), record.partition()),
-                new OffsetAndMetadata(record.offset() + 1)
+    private SnapshotCoalescer coalescer(Producer<String, SpecificRecordBase> producer) {
+        return new SnapshotCoalescer(
+                emitter,
+                producer,
+                properties.getCoalescing().getWindow(),
+                properties.getCoalescing().getMaxChanges()
         );
+    }
+
+    /**
+     * Постоянный для экземпляра и номера обработчика: после перезапуска initTransactions
+     * отменяет незавершённую транзакцию предыдущего запуска.
+     */
+    private String transactionalId(int worker) {
+        return properties.getTransactions().getIdPrefix() + "-" + properties.resolveInstanceId() + "-" + worker;
+    }
 
-        if (count % 10 == 0) {
-            consumer.commitAsync(currentOffsets, (offsets, exception) -> {
-                if (exception != null) {
-                    log.warn("Ошибка во время фиксации оффсетов: {}", offsets, exception);
-                }
-            });
+    private void awaitWorkers() {
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
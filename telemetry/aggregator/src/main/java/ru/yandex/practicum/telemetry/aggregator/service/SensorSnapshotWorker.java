@@ -0,0 +1,322 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.OutOfOrderSequenceException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.apache.kafka.common.errors.WakeupException;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.logging.LogSampling;
+import ru.yandex.practicum.telemetry.logging.SampledLogger;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Обработчик одного консьюмера группы: читает назначенные ему партиции датчиков
+ * и ведёт шарды снапшотов этих партиций.
+ * <p>
+ * В транзакционном режиме у обработчика свой продюсер: снапшоты, выпущенные за один poll, и оффсеты
+ * прочитанных записей фиксируются одной транзакцией. При сбое транзакция отменяется, шарды назначенных партиций
+ * сбрасываются и чтение продолжается с последних зафиксированных оффсетов.
+ */
+@Slf4j
+class SensorSnapshotWorker implements Runnable, ConsumerRebalanceListener {
+
+    private static final SampledLogger recordLog = LogSampling.getLogger(SensorSnapshotWorker.class, "sensor-records");
+    private static final SampledLogger snapshotLog = LogSampling.getLogger(SensorSnapshotWorker.class, "snapshots");
+
+    private final Consumer<String, SpecificRecordBase> consumer;
+    private final Producer<String, SpecificRecordBase> producer;
+    private final boolean transactional;
+    private final SnapshotCoalescer coalescer;
+    private final InMemorySensorEvent service;
+    private final String sensorTopic;
+    private final Duration pollTimeout;
+    private final Counter processed;
+
+    private final Map<TopicPartition, OffsetAndMetadata> currentOffsets = new HashMap<>();
+
+    SensorSnapshotWorker(Consumer<String, SpecificRecordBase> consumer,
+                         Producer<String, SpecificRecordBase> producer,
+                         boolean transactional,
+                         SnapshotCoalescer coalescer,
+                         InMemorySensorEvent service,
+                         String sensorTopic,
+                         Duration pollTimeout,
+                         Counter processed) {
+        this.consumer = consumer;
+        this.producer = producer;
+        this.transactional = transactional;
+        this.coalescer = coalescer;
+        this.service = service;
+        this.sensorTopic = sensorTopic;
+        this.pollTimeout = pollTimeout;
+        this.processed = processed;
+    }
+
+    @Override
+    public void run() {
+        boolean stopped = false;
+        try {
+            consumer.subscribe(List.of(sensorTopic), this);
+
+            int count = 0;
+
+            while (true) {
+                ConsumerRecords<String, SpecificRecordBase> records = consumer.poll(coalescer.remainingWindow(pollTimeout));
+
+                long now = System.nanoTime();
+                Set<TopicPartition> assignment = consumer.assignment();
+                service.evictIdle(assignment);
+                if (transactional && records.isEmpty() && !coalescer.hasExpired(now)
+                        && !service.hasRemovals(assignment)) {
+                    continue;
+                }
+
+                try {
+                    if (transactional) {
+                        producer.beginTransaction();
+                    }
+
+                    for (ConsumerRecord<String, SpecificRecordBase> record : records) {
+                        handleRecord(record, count);
+                        count++;
+                    }
+                    applyRemovals(assignment);
+                    coalescer.flushExpired(now);
+
+                    if (transactional) {
+                        Map<TopicPartition, OffsetAndMetadata> offsets = committableOffsets();
+                        producer.sendOffsetsToTransaction(offsets, consumer.groupMetadata());
+                        producer.commitTransaction();
+                        checkpoint(offsets);
+                    } else {
+                        consumer.commitAsync(committableOffsets(), this::onCommitComplete);
+                    }
+                    processed.increment(records.count());
+                } catch (ProducerFencedException | OutOfOrderSequenceException | AuthorizationException e) {
+                    throw e;
+                } catch (KafkaException e) {
+                    if (!transactional) {
+                        throw e;
+                    }
+                    abortAndRewind(e);
+                }
+            }
+
+        } catch (WakeupException ignored) {
+            stopped = true;
+        } catch (Exception e) {
+            log.error("Ошибка во время обработки событий от датчиков", e);
+        } finally {
+            try {
+                commitOnShutdown(stopped);
+            } catch (Exception e) {
+                log.warn("Ошибка фиксации при остановке обработчика", e);
+            } finally {
+                consumer.close();
+                if (transactional) {
+                    producer.close();
+                }
+            }
+        }
+    }
+
+    void wakeup() {
+        consumer.wakeup();
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+
+        // снапшоты по уже обработанным записям должны уйти раньше, чем партицию получит другой обработчик
+        Map<TopicPartition, OffsetAndMetadata> revoked = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            OffsetAndMetadata offset = currentOffsets.remove(partition);
+            if (offset != null) {
+                revoked.put(partition, offset);
+            }
+        }
+
+        if (transactional) {
+            if (!revoked.isEmpty() || coalescer.hasPending(partitions)) {
+                producer.beginTransaction();
+                coalescer.flush(partitions);
+                if (!revoked.isEmpty()) {
+                    producer.sendOffsetsToTransaction(revoked, consumer.groupMetadata());
+                }
+                producer.commitTransaction();
+            }
+        } else {
+            coalescer.flush(partitions);
+            producer.flush();
+            if (!revoked.isEmpty()) {
+                consumer.commitSync(revoked);
+            }
+        }
+
+        for (TopicPartition partition : partitions) {
+            service.revoke(partition, consumer.position(partition));
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        assign(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Collection<TopicPartition> partitions) {
+        coalescer.discard(partitions);
+        for (TopicPartition partition : partitions) {
+            currentOffsets.remove(partition);
+            service.drop(partition);
+        }
+    }
+
+    private void handleRecord(ConsumerRecord<String, SpecificRecordBase> record, int count) {
+        recordLog.info("Обновление снапшота");
+
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        SensorEventAvro event = (SensorEventAvro) record.value();
+        Optional<SensorsSnapshotAvro> snapshotAvro = service.updateState(partition, event);
+
+        if (snapshotAvro.isEmpty()) {
+            recordLog.info("Обновление снапшота не произошло.");
+        } else {
+            SensorsSnapshotAvro snapshot = snapshotAvro.get();
+            snapshotLog.info("Новый снапшот: {}", snapshot);
+
+            coalescer.offer(partition, record.offset(), snapshot, event.getId());
+        }
+
+        manageOffsets(partition, record, count);
+    }
+
+    private void applyRemovals(Set<TopicPartition> assignment) {
+        for (InMemorySensorEvent.SensorRemoval removal : service.applyRemovals(assignment)) {
+            log.info("Датчик {} удалён из снапшота хаба {}", removal.sensorId(), removal.snapshot().getHubId());
+            coalescer.offerRemoval(removal.snapshot(), removal.sensorId());
+        }
+    }
+
+    /**
+     * При штатной остановке все выданные записи обработаны, и после фиксации состояние шардов
+     * соответствует позициям консьюмера.
+     */
+    private void commitOnShutdown(boolean clean) {
+        if (transactional) {
+            producer.beginTransaction();
+            coalescer.flushAll();
+            if (!currentOffsets.isEmpty()) {
+                producer.sendOffsetsToTransaction(currentOffsets, consumer.groupMetadata());
+            }
+            producer.commitTransaction();
+        } else {
+            coalescer.flushAll();
+            producer.flush();
+            if (!currentOffsets.isEmpty()) {
+                consumer.commitSync(currentOffsets);
+            }
+        }
+        currentOffsets.clear();
+
+        if (clean) {
+            for (TopicPartition partition : consumer.assignment()) {
+                service.checkpoint(partition, consumer.position(partition));
+            }
+        }
+    }
+
+    /**
+     * Состояние партиции соответствует зафиксированному оффсету, только если его не ограничило окно склейки.
+     */
+    private void checkpoint(Map<TopicPartition, OffsetAndMetadata> committed) {
+        committed.forEach((partition, offset) -> {
+            if (offset.equals(currentOffsets.get(partition))) {
+                service.checkpoint(partition, offset.offset());
+            }
+        });
+    }
+
+    /**
+     * Изменения отменённой транзакции уже попали в шарды, поэтому шарды назначенных партиций строятся заново
+     * с последних зафиксированных оффсетов.
+     */
+    private void abortAndRewind(KafkaException cause) {
+        log.warn("Транзакция отменена, чтение будет повторено с зафиксированных оффсетов", cause);
+        producer.abortTransaction();
+
+        Set<TopicPartition> assignment = consumer.assignment();
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(assignment);
+        coalescer.discard(assignment);
+        currentOffsets.clear();
+
+        for (TopicPartition partition : assignment) {
+            OffsetAndMetadata offset = committed.get(partition);
+            if (offset != null) {
+                consumer.seek(partition, offset);
+            } else {
+                consumer.seekToBeginning(List.of(partition));
+            }
+            service.drop(partition);
+        }
+        assign(assignment);
+    }
+
+    private void assign(Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        Map<TopicPartition, Long> positions = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            positions.put(partition, consumer.position(partition));
+        }
+        service.assign(positions, consumer.partitionsFor(sensorTopic).size());
+    }
+
+    private void manageOffsets(TopicPartition partition, ConsumerRecord<String, SpecificRecordBase> record, int count) {
+        currentOffsets.put(partition, new OffsetAndMetadata(record.offset() + 1));
+
+        if (!transactional && count % 10 == 0) {
+            consumer.commitAsync(committableOffsets(), this::onCommitComplete);
+        }
+    }
+
+    /**
+     * Оффсеты обработанных записей, не дальше первой записи хаба, снапшот которого ещё в окне склейки.
+     */
+    private Map<TopicPartition, OffsetAndMetadata> committableOffsets() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>(currentOffsets);
+        coalescer.pendingOffsets().forEach((partition, pendingOffset) ->
+                offsets.computeIfPresent(partition, (key, offset) ->
+                        pendingOffset < offset.offset() ? new OffsetAndMetadata(pendingOffset) : offset));
+        return offsets;
+    }
+
+    private void onCommitComplete(Map<TopicPartition, OffsetAndMetadata> offsets, Exception exception) {
+        if (exception != null) {
+            log.warn("Ошибка во время фиксации оффсетов: {}", offsets, exception);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+import ru.yandex.practicum.telemetry.aggregator.service.state.HeapSensorStateStore;
+import ru.yandex.practicum.telemetry.aggregator.service.state.LogSensorStateStore;
+import ru.yandex.practicum.telemetry.aggregator.service.state.SensorStateStore;
+import ru.yandex.practicum.telemetry.aggregator.service.state.SlotSensorStateStore;
+
+import java.nio.file.Path;
+
+/**
+ * Создаёт хранилище состояния шарда по {@code aggregator.state.store}.
+ */
+@Component
+@RequiredArgsConstructor
+public class SensorStateStoreFactory {
+
+    private final AggregatorProperties properties;
+
+    public SensorStateStore open(TopicPartition partition) {
+        AggregatorProperties.State state = properties.getState();
+        return switch (state.getStore()) {
+            case HEAP -> new HeapSensorStateStore();
+            case OFF_HEAP -> SlotSensorStateStore.offHeap(state.getCacheHubs());
+            case MAPPED -> SlotSensorStateStore.mapped(
+                    Path.of(state.getDirectory()), partition.toString(), state.getCacheHubs());
+            case LOG -> new LogSensorStateStore(
+                    Path.of(state.getDirectory()), partition.toString(), state.getCacheHubs(), state.getWriteBatch());
+        };
+    }
+}
@@ -0,0 +1,168 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.TopicPartition;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Окно склейки обновлений по хабу: изменения, пришедшие в течение {@code window} после первого,
+ * уходят одним снапшотом. Окно закрывается раньше, если по хабу накопилось {@code maxChanges} изменений.
+ * <p>
+ * Пока снапшот хаба не отправлен, смещение его первой записи ограничивает фиксируемый оффсет партиции,
+ * чтобы после падения эти записи были прочитаны повторно. Используется из одного потока обработчика.
+ */
+class SnapshotCoalescer {
+
+    private final SnapshotEmitter emitter;
+    private final Producer<String, SpecificRecordBase> producer;
+    private final long windowNanos;
+    private final int maxChanges;
+
+    // порядок вставки совпадает с порядком открытия окон
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+
+    SnapshotCoalescer(SnapshotEmitter emitter,
+                      Producer<String, SpecificRecordBase> producer,
+                      Duration window,
+                      int maxChanges) {
+        this.emitter = emitter;
+        this.producer = producer;
+        this.windowNanos = window.toNanos();
+        this.maxChanges = maxChanges;
+    }
+
+    boolean enabled() {
+        return windowNanos > 0;
+    }
+
+    void offer(TopicPartition partition, long offset, SensorsSnapshotAvro snapshot, String sensorId) {
+        if (!enabled()) {
+            emitter.emit(producer, snapshot, Set.of(sensorId), Set.of());
+            return;
+        }
+
+        String hubId = snapshot.getHubId();
+        Pending entry = pending.get(hubId);
+        if (entry == null) {
+            entry = new Pending(partition, offset, System.nanoTime());
+            pending.put(hubId, entry);
+        } else {
+            emitter.suppressed();
+        }
+        entry.snapshot = snapshot;
+        entry.changedSensors.add(sensorId);
+        entry.removedSensors.remove(sensorId);
+        entry.changes++;
+
+        if (maxChanges > 0 && entry.changes >= maxChanges) {
+            pending.remove(hubId);
+            emit(entry);
+        }
+    }
+
+    /**
+     * Удаление датчика не привязано к записи топика датчиков, поэтому открытое им окно не ограничивает оффсеты.
+     */
+    void offerRemoval(SensorsSnapshotAvro snapshot, String sensorId) {
+        Pending entry = pending.get(snapshot.getHubId());
+        if (entry == null) {
+            emitter.emit(producer, snapshot, Set.of(), Set.of(sensorId));
+            return;
+        }
+        entry.snapshot = snapshot;
+        entry.changedSensors.remove(sensorId);
+        entry.removedSensors.add(sensorId);
+    }
+
+    boolean hasExpired(long now) {
+        return !pending.isEmpty() && now - pending.values().iterator().next().openedAt >= windowNanos;
+    }
+
+    boolean hasPending(Collection<TopicPartition> partitions) {
+        return pending.values().stream().anyMatch(entry -> partitions.contains(entry.partition));
+    }
+
+    void flushExpired(long now) {
+        Iterator<Pending> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            Pending entry = iterator.next();
+            if (now - entry.openedAt < windowNanos) {
+                break;
+            }
+            iterator.remove();
+            emit(entry);
+        }
+    }
+
+    void flush(Collection<TopicPartition> partitions) {
+        Iterator<Pending> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            Pending entry = iterator.next();
+            if (partitions.contains(entry.partition)) {
+                iterator.remove();
+                emit(entry);
+            }
+        }
+    }
+
+    void flushAll() {
+        pending.values().forEach(this::emit);
+        pending.clear();
+    }
+
+    void discard(Collection<TopicPartition> partitions) {
+        pending.values().removeIf(entry -> partitions.contains(entry.partition));
+    }
+
+    /**
+     * Наименьшее смещение неотправленной записи по каждой партиции с открытыми окнами.
+     */
+    Map<TopicPartition, Long> pendingOffsets() {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (Pending entry : pending.values()) {
+            offsets.merge(entry.partition, entry.firstOffset, Math::min);
+        }
+        return offsets;
+    }
+
+    Duration remainingWindow(Duration pollTimeout) {
+        if (!enabled() || pending.isEmpty()) {
+            return pollTimeout;
+        }
+        long elapsed = System.nanoTime() - pending.values().iterator().next().openedAt;
+        long remaining = Math.max(0, windowNanos - elapsed);
+        return remaining < pollTimeout.toNanos() ? Duration.ofNanos(remaining) : pollTimeout;
+    }
+
+    private void emit(Pending entry) {
+        emitter.emit(producer, entry.snapshot, entry.changedSensors, entry.removedSensors);
+    }
+
+    private static final class Pending {
+
+        private final TopicPartition partition;
+        private final long firstOffset;
+        private final long openedAt;
+        private final Set<String> changedSensors = new HashSet<>();
+        private final Set<String> removedSensors = new HashSet<>();
+
+        private SensorsSnapshotAvro snapshot;
+        private int changes;
+
+        private Pending(TopicPartition partition, long firstOffset, long openedAt) {
+            this.partition = partition;
+            this.firstOffset = firstOffset;
+            this.openedAt = openedAt;
+        }
+    }
+}
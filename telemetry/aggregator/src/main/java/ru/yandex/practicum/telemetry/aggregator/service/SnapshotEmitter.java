@@ -0,0 +1,168 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+import ru.yandex.practicum.telemetry.logging.LogSampling;
+import ru.yandex.practicum.telemetry.logging.SampledLogger;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отправляет обновлённый снапшот хаба в режиме из {@code aggregator.emission.mode}: полностью, дельтой или обоими.
+ * <p>
+ * Первая дельта по хабу после старта и каждая {@code keyframe-interval}-я содержат все датчики хаба, чтобы
+ * потребитель дельт мог восстановить состояние после собственного перезапуска. Ключевым кадром ({@code full=true})
+ * такая дельта отмечается, только если шард знает всё состояние хаба: потребитель заменяет им своё состояние.
+ * Хаб, состояние которого при назначении партиции не восстановлено, получает дельту со всеми известными датчиками
+ * и списком удалённых, но без {@code full}. Через {@code aggregator.state.hub-ttl} в шарде такой хаб считается
+ * полным: датчики, не сообщавшие о себе всё это время, потребитель при ключевом кадре забудет.
+ * Счётчики {@code aggregator.emission.bytes} по типам позволяют сравнить объём полных снапшотов и дельт.
+ */
+@Slf4j
+@Component
+public class SnapshotEmitter {
+
+    private static final SampledLogger sendLog = LogSampling.getLogger(SnapshotEmitter.class, "snapshots");
+
+    private final AggregatorProperties.EmissionMode mode;
+    private final String snapshotTopic;
+    private final String deltaTopic;
+    private final int keyframeInterval;
+    private final long hubTtlNanos;
+
+    private final Counter fullBytes;
+    private final Counter deltaBytes;
+    private final Counter emitted;
+    private final Counter suppressed;
+
+    // хаб принадлежит одной партиции, поэтому его состояние меняет только один поток
+    private final Map<String, KeyframeState> keyframes = new ConcurrentHashMap<>();
+
+    public SnapshotEmitter(AggregatorProperties properties, MeterRegistry registry) {
+        this.mode = properties.getEmission().getMode();
+        this.snapshotTopic = properties.getKafka().getProducer().getTopic();
+        this.deltaTopic = properties.getEmission().getDeltaTopic();
+        this.keyframeInterval = Math.max(1, properties.getEmission().getKeyframeInterval());
+        this.hubTtlNanos = properties.getState().getHubTtl().toNanos();
+        this.fullBytes = emittedBytes(registry, "full");
+        this.deltaBytes = emittedBytes(registry, "delta");
+        this.emitted = Counter.builder("aggregator.snapshots.emitted")
+                .description("Выпущенные снапшоты")
+                .register(registry);
+        this.suppressed = Counter.builder("aggregator.snapshots.suppressed")
+                .description("Изменения, склеенные с уже ожидающим снапшотом хаба")
+                .register(registry);
+    }
+
+    /**
+     * Начинает отсчёт ключевых кадров хаба, добавленного в шард.
+     *
+     * @param complete шард знает всё состояние хаба
+     */
+    public void track(String hubId, boolean complete) {
+        if (mode.delta()) {
+            keyframes.put(hubId, new KeyframeState(keyframeInterval, complete, System.nanoTime()));
+        }
+    }
+
+    public void forget(String hubId) {
+        keyframes.remove(hubId);
+    }
+
+    public void emit(Producer<String, SpecificRecordBase> producer,
+                     SensorsSnapshotAvro snapshot,
+                     Collection<String> changedSensorIds,
+                     Collection<String> removedSensorIds) {
+        String hubId = snapshot.getHubId();
+        emitted.increment();
+
+        if (mode.full()) {
+            send(producer, snapshotTopic, hubId, snapshot, fullBytes);
+        }
+
+        if (mode.delta()) {
+            // хаб уже вытеснен, а его снапшот ещё ждал в окне склейки
+            KeyframeState state = keyframes.get(hubId);
+            boolean keyframe = state != null && state.sinceKeyframe >= keyframeInterval;
+            if (state != null) {
+                state.sinceKeyframe = keyframe ? 1 : state.sinceKeyframe + 1;
+            }
+            if (keyframe && !state.complete && System.nanoTime() - state.trackedAt >= hubTtlNanos) {
+                state.complete = true;
+            }
+            boolean full = keyframe && state.complete;
+
+            Map<String, SensorStateAvro> changed = keyframe
+                    ? snapshot.getSensorsState()
+                    : changedStates(snapshot, changedSensorIds);
+            List<String> removed = full ? List.of() : List.copyOf(removedSensorIds);
+            SensorsSnapshotDeltaAvro delta = new SensorsSnapshotDeltaAvro(
+                    hubId, snapshot.getTimestamp(), full, changed, removed);
+            send(producer, deltaTopic, hubId, delta, deltaBytes);
+        }
+    }
+
+    public void suppressed() {
+        suppressed.increment();
+    }
+
+    private void send(Producer<String, SpecificRecordBase> producer,
+                      String topic,
+                      String hubId,
+                      SpecificRecordBase value,
+                      Counter bytes) {
+        Callback callback = (metadata, exception) -> {
+            if (exception != null) {
+                log.warn("Ошибка отправки в топик {} для хаба {}", topic, hubId, exception);
+            } else {
+                bytes.increment(metadata.serializedValueSize());
+            }
+        };
+        producer.send(new ProducerRecord<>(topic, hubId, value), callback);
+        sendLog.info("Снапшот отправлен в топик {}", topic);
+    }
+
+    private static Map<String, SensorStateAvro> changedStates(SensorsSnapshotAvro snapshot,
+                                                             Collection<String> sensorIds) {
+        Map<String, SensorStateAvro> changed = new HashMap<>(sensorIds.size() * 2);
+        for (String sensorId : sensorIds) {
+            changed.put(sensorId, snapshot.getSensorsState().get(sensorId));
+        }
+        return changed;
+    }
+
+    private static Counter emittedBytes(MeterRegistry registry, String type) {
+        return Counter.builder("aggregator.emission.bytes")
+                .description("Объём отправленных снапшотов")
+                .baseUnit("bytes")
+                .tag("type", type)
+                .register(registry);
+    }
+
+    private static final class KeyframeState {
+
+        private final long trackedAt;
+        private boolean complete;
+        private int sinceKeyframe;
+
+        private KeyframeState(int sinceKeyframe, boolean complete, long trackedAt) {
+            this.sinceKeyframe = sinceKeyframe;
+            this.complete = complete;
+            this.trackedAt = trackedAt;
+        }
+    }
+}
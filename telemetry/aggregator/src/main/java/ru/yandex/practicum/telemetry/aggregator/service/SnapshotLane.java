@@ -0,0 +1,190 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.logging.LogSampling;
+import ru.yandex.practicum.telemetry.logging.SampledLogger;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Поток конвейера: обновляет состояние и выпускает снапшоты по записям назначенных ему партиций.
+ * <p>
+ * Записи и служебные задачи приходят через кольцевой буфер от потока чтения. Партиция целиком
+ * принадлежит одной полосе, поэтому её шард и окна склейки по её хабам меняет только этот поток.
+ * После обработки полоса публикует оффсеты, которые можно фиксировать: не дальше обработанных записей
+ * и первой записи ещё не отправленного снапшота.
+ */
+@Slf4j
+class SnapshotLane implements Runnable {
+
+    private static final SampledLogger recordLog = LogSampling.getLogger(SnapshotLane.class, "sensor-records");
+    private static final SampledLogger snapshotLog = LogSampling.getLogger(SnapshotLane.class, "snapshots");
+
+    // между проверками окон склейки и удалений при непрерывном потоке записей
+    private static final int MAINTENANCE_INTERVAL = 256;
+
+    private final SpscRingBuffer<Object> queue;
+    private final SnapshotCoalescer coalescer;
+    private final InMemorySensorEvent service;
+    private final Duration idleTimeout;
+    private final Counter processed;
+    private final Map<TopicPartition, OffsetAndMetadata> committable;
+
+    private final Set<TopicPartition> partitions = new HashSet<>();
+    // следующий оффсет после последней обработанной записи по каждой партиции полосы
+    private final Map<TopicPartition, Long> positions = new HashMap<>();
+
+    private volatile Thread thread;
+    private volatile boolean running = true;
+    private volatile Throwable failure;
+
+    SnapshotLane(int capacity,
+                 SnapshotCoalescer coalescer,
+                 InMemorySensorEvent service,
+                 Duration idleTimeout,
+                 Counter processed,
+                 Map<TopicPartition, OffsetAndMetadata> committable) {
+        this.queue = new SpscRingBuffer<>(capacity);
+        this.coalescer = coalescer;
+        this.service = service;
+        this.idleTimeout = idleTimeout;
+        this.processed = processed;
+        this.committable = committable;
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        try {
+            int sinceMaintenance = 0;
+            while (running) {
+                Object item = queue.poll();
+                if (item == null || ++sinceMaintenance >= MAINTENANCE_INTERVAL) {
+                    maintain();
+                    sinceMaintenance = 0;
+                }
+                if (item == null) {
+                    LockSupport.parkNanos(this, coalescer.remainingWindow(idleTimeout).toNanos());
+                } else if (item instanceof Runnable task) {
+                    task.run();
+                } else {
+                    @SuppressWarnings("unchecked")
+                    ConsumerRecord<String, SpecificRecordBase> record = (ConsumerRecord<String, SpecificRecordBase>) item;
+                    handleRecord(record);
+                }
+            }
+        } catch (Throwable e) {
+            failure = e;
+            log.error("Ошибка в потоке конвейера", e);
+        }
+    }
+
+    /**
+     * Вызывается только потоком чтения; ждёт места в буфере.
+     */
+    void submit(Object item) {
+        while (!queue.offer(item)) {
+            checkFailure();
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    /**
+     * Передаёт партицию полосе после всех ранее поставленных в очередь записей.
+     */
+    void assign(TopicPartition partition) {
+        submit((Runnable) () -> partitions.add(partition));
+    }
+
+    void wakeup() {
+        LockSupport.unpark(thread);
+    }
+
+    void stop() {
+        running = false;
+        wakeup();
+    }
+
+    void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Поток конвейера остановлен с ошибкой", failure);
+        }
+    }
+
+    /**
+     * Отправляет снапшоты по ожидающим окнам партиций и больше не ведёт их оффсеты.
+     */
+    void flush(Collection<TopicPartition> revoked) {
+        coalescer.flush(revoked);
+        publishOffsets();
+        release(revoked);
+    }
+
+    void flushAll() {
+        coalescer.flushAll();
+        publishOffsets();
+    }
+
+    void discard(Collection<TopicPartition> lost) {
+        coalescer.discard(lost);
+        release(lost);
+    }
+
+    private void handleRecord(ConsumerRecord<String, SpecificRecordBase> record) {
+        recordLog.info("Обновление снапшота");
+
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        SensorEventAvro event = (SensorEventAvro) record.value();
+        Optional<SensorsSnapshotAvro> snapshotAvro = service.updateState(partition, event);
+
+        if (snapshotAvro.isEmpty()) {
+            recordLog.info("Обновление снапшота не произошло.");
+        } else {
+            SensorsSnapshotAvro snapshot = snapshotAvro.get();
+            snapshotLog.info("Новый снапшот: {}", snapshot);
+
+            coalescer.offer(partition, record.offset(), snapshot, event.getId());
+        }
+
+        positions.put(partition, record.offset() + 1);
+        processed.increment();
+    }
+
+    private void maintain() {
+        service.evictIdle(partitions);
+        for (InMemorySensorEvent.SensorRemoval removal : service.applyRemovals(partitions)) {
+            log.info("Датчик {} удалён из снапшота хаба {}", removal.sensorId(), removal.snapshot().getHubId());
+            coalescer.offerRemoval(removal.snapshot(), removal.sensorId());
+        }
+        coalescer.flushExpired(System.nanoTime());
+        publishOffsets();
+    }
+
+    private void release(Collection<TopicPartition> released) {
+        partitions.removeAll(released);
+        positions.keySet().removeAll(released);
+    }
+
+    private void publishOffsets() {
+        Map<TopicPartition, Long> pending = coalescer.pendingOffsets();
+        positions.forEach((partition, position) -> {
+            long offset = Math.min(position, pending.getOrDefault(partition, position));
+            committable.put(partition, new OffsetAndMetadata(offset));
+        });
+    }
+}
@@ -0,0 +1,195 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+import ru.yandex.practicum.telemetry.aggregator.config.EventClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Восстанавливает шарды назначенных партиций датчиков, для которых нет ни отложенного шарда, ни хранилища
+ * на позиции партиции: перечитывает топик снапшотов (compacted, ключ — hubId) до концевых смещений
+ * и возвращает последнее состояние хабов этих партиций.
+ * <p>
+ * В режиме {@code delta} полные снапшоты не публикуются, и состояние хаба собирается из топика дельт: ключевой
+ * кадр ({@code full=true}) заменяет его, остальные дельты дополняют. Топик дельт не компактируется, поэтому он
+ * читается только за последний {@code aggregator.state.hub-ttl}: хабы, молчавшие дольше, всё равно не загружаются.
+ * Хаб, для которого ключевой кадр не прочитан, восстанавливается неполным.
+ * <p>
+ * Если в топиках снапшотов и датчиков одинаковое число партиций, хаб лежит в партиции с тем же номером
+ * и читаются только они; иначе читается весь топик и хабы отбираются по партиции ключа.
+ */
+@Slf4j
+@Component
+public class SnapshotStateRestorer {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+
+    private final EventClient client;
+    private final AggregatorProperties properties;
+
+    private final Timer restoreTimer;
+
+    public SnapshotStateRestorer(EventClient client,
+                                 AggregatorProperties properties,
+                                 MeterRegistry registry) {
+        this.client = client;
+        this.properties = properties;
+        this.restoreTimer = Timer.builder("aggregator.restore.duration")
+                .description("Время восстановления снапшотов назначенных партиций")
+                .register(registry);
+    }
+
+    /**
+     * @param partitions     партиции топика датчиков
+     * @param partitionCount число партиций топика датчиков
+     * @return хабы по партициям или пустой результат, если восстановление отключено или не завершилось;
+     * прочитанное частично не возвращается
+     */
+    public Optional<Map<TopicPartition, List<RestoredHub>>> restore(Collection<TopicPartition> partitions,
+                                                                   int partitionCount) {
+        if (!properties.getRestore().isEnabled()) {
+            return Optional.empty();
+        }
+
+        boolean full = properties.getEmission().getMode().full();
+        String topic = full ? properties.getKafka().getProducer().getTopic() : properties.getEmission().getDeltaTopic();
+        Set<Integer> owned = partitions.stream().map(TopicPartition::partition).collect(Collectors.toSet());
+        long started = System.nanoTime();
+        Map<String, HubReplay> snapshots = new HashMap<>();
+
+        try (Consumer<String, SpecificRecordBase> consumer =
+                     full ? client.createSnapshotConsumer() : client.createSnapshotDeltaConsumer()) {
+            List<PartitionInfo> infos = consumer.partitionsFor(topic);
+            if (infos == null || infos.isEmpty()) {
+                log.info("Топик {} не найден, восстанавливать нечего", topic);
+                return Optional.of(Map.of());
+            }
+
+            boolean aligned = infos.size() == partitionCount;
+            List<TopicPartition> topicPartitions = infos.stream()
+                    .filter(info -> !aligned || owned.contains(info.partition()))
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .toList();
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(topicPartitions);
+
+            consumer.assign(topicPartitions);
+            if (full) {
+                consumer.seekToBeginning(topicPartitions);
+            } else {
+                seekToHubTtl(consumer, topicPartitions, endOffsets);
+            }
+
+            long deadline = started + properties.getRestore().getTimeout().toNanos();
+            while (!reachedEnd(consumer, endOffsets)) {
+                if (System.nanoTime() > deadline) {
+                    log.warn("Восстановление партиций {} прервано по таймауту, хабов прочитано: {}",
+                            partitions, snapshots.size());
+                    return Optional.empty();
+                }
+                for (ConsumerRecord<String, SpecificRecordBase> record : consumer.poll(POLL_TIMEOUT)) {
+                    if (!owned.contains(HubPartitioner.partition(record.key(), partitionCount))) {
+                        continue;
+                    }
+                    if (record.value() == null) {
+                        snapshots.remove(record.key());
+                    } else if (record.value() instanceof SensorsSnapshotAvro snapshot) {
+                        snapshots.computeIfAbsent(record.key(), hubId -> new HubReplay())
+                                .apply(snapshot.getTimestamp(), true, snapshot.getSensorsState(), List.of());
+                    } else {
+                        SensorsSnapshotDeltaAvro delta = (SensorsSnapshotDeltaAvro) record.value();
+                        snapshots.computeIfAbsent(record.key(), hubId -> new HubReplay()).apply(
+                                delta.getTimestamp(), delta.getFull(), delta.getChangedSensors(),
+                                delta.getRemovedSensors());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // без восстановления агрегатор работоспособен, только первые снапшоты хабов будут неполными
+            log.error("Ошибка восстановления партиций {} из топика {}", partitions, topic, e);
+            return Optional.empty();
+        } finally {
+            restoreTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+
+        Map<TopicPartition, List<RestoredHub>> result = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            result.put(partition, new ArrayList<>());
+        }
+        String sensorTopic = partitions.iterator().next().topic();
+        snapshots.forEach((hubId, replay) -> result
+                .get(new TopicPartition(sensorTopic, HubPartitioner.partition(hubId, partitionCount)))
+                .add(new RestoredHub(
+                        new SensorsSnapshotAvro(hubId, replay.timestamp, replay.sensors), replay.complete)));
+
+        log.info("Прочитано снапшотов хабов партиций {}: {} за {} мс",
+                partitions, snapshots.size(), Duration.ofNanos(System.nanoTime() - started).toMillis());
+        return Optional.of(result);
+    }
+
+    private void seekToHubTtl(Consumer<String, SpecificRecordBase> consumer,
+                              List<TopicPartition> topicPartitions,
+                              Map<TopicPartition, Long> endOffsets) {
+        long since = Instant.now().minus(properties.getState().getHubTtl()).toEpochMilli();
+        Map<TopicPartition, Long> timestamps = new HashMap<>();
+        topicPartitions.forEach(partition -> timestamps.put(partition, since));
+        consumer.offsetsForTimes(timestamps).forEach((partition, found) ->
+                consumer.seek(partition, found != null ? found.offset() : endOffsets.get(partition)));
+    }
+
+    private boolean reachedEnd(Consumer<String, SpecificRecordBase> consumer, Map<TopicPartition, Long> endOffsets) {
+        for (Map.Entry<TopicPartition, Long> entry : endOffsets.entrySet()) {
+            if (consumer.position(entry.getKey()) < entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param complete снапшот содержит всё состояние хаба, а не только дельты после неизвестного ключевого кадра
+     */
+    public record RestoredHub(SensorsSnapshotAvro snapshot, boolean complete) {
+    }
+
+    private static final class HubReplay {
+
+        private final Map<String, SensorStateAvro> sensors = new HashMap<>();
+        private Instant timestamp;
+        private boolean complete;
+
+        void apply(Instant timestamp,
+                   boolean full,
+                   Map<String, SensorStateAvro> changed,
+                   Collection<String> removed) {
+            if (full) {
+                sensors.clear();
+                complete = true;
+            }
+            sensors.putAll(changed);
+            removed.forEach(sensors::remove);
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кольцевой буфер без блокировок для одного писателя и одного читателя.
+ * Запись публикуется сдвигом {@code tail} после того, как элемент положен в ячейку.
+ */
+final class SpscRingBuffer<T> {
+
+    private final Object[] items;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    SpscRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.items = new Object[size];
+        this.mask = size - 1;
+    }
+
+    boolean offer(T item) {
+        long position = tail.get();
+        if (position - head.get() == items.length) {
+            return false;
+        }
+        items[(int) (position & mask)] = item;
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long position = head.get();
+        if (position == tail.get()) {
+            return null;
+        }
+        int index = (int) (position & mask);
+        T item = (T) items[index];
+        items[index] = null;
+        head.lazySet(position + 1);
+        return item;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.yandex.practicum.telemetry.aggregator.service.state;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Слоты в памяти вне кучи; состояние не переживает перезапуск.
+ */
+final class DirectSlotStorage implements SlotStorage {
+
+    private final int chunkBytes;
+    private final ByteBuffer header;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    DirectSlotStorage(int headerBytes, int chunkBytes) {
+        this.chunkBytes = chunkBytes;
+        this.header = ByteBuffer.allocateDirect(headerBytes);
+    }
+
+    @Override
+    public ByteBuffer header() {
+        return header;
+    }
+
+    @Override
+    public ByteBuffer chunk(int index) {
+        while (chunks.size() <= index) {
+            chunks.add(ByteBuffer.allocateDirect(chunkBytes));
+        }
+        return chunks.get(index);
+    }
+
+    @Override
+    public int chunkCount() {
+        return chunks.size();
+    }
+
+    @Override
+    public List<String> loadIds() {
+        return List.of();
+    }
+
+    @Override
+    public void appendId(String id) {
+    }
+
+    @Override
+    public void rewriteIds(List<String> ids) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        chunks.clear();
+    }
+}
@@ -0,0 +1,120 @@
+package ru.yandex.practicum.telemetry.aggregator.service.state;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Снапшоты хабов в куче поверх {@link PersistentMap}: обновление копирует только путь к изменённому датчику.
+ * Не сохраняется между запусками.
+ */
+public final class HeapSensorStateStore implements SensorStateStore {
+
+    // грубая оценка для 64-битной JVM со сжатыми ссылками: запись словаря, снапшот и hubId
+    private static final long HUB_BYTES = 200;
+    // узел словаря, sensorId, SensorStateAvro с Instant и показаниями
+    private static final long SENSOR_BYTES = 180;
+
+    private final Map<String, SensorsSnapshotAvro> snapshots = new HashMap<>();
+    private long sensorCount;
+
+    @Override
+    public boolean read(String hubId, String sensorId, SensorReading into) {
+        SensorsSnapshotAvro snapshot = snapshots.get(hubId);
+        SensorStateAvro state = snapshot == null ? null : snapshot.getSensorsState().get(sensorId);
+        if (state == null) {
+            return false;
+        }
+        into.set(state);
+        return true;
+    }
+
+    @Override
+    public SensorsSnapshotAvro update(String hubId, String sensorId, SensorStateAvro state, Instant timestamp) {
+        PersistentMap<String, SensorStateAvro> sensorsState = sensorsState(hubId);
+        if (!sensorsState.containsKey(sensorId)) {
+            sensorCount++;
+        }
+        SensorsSnapshotAvro updated = new SensorsSnapshotAvro(hubId, timestamp, sensorsState.plus(sensorId, state));
+        snapshots.put(hubId, updated);
+        return updated;
+    }
+
+    @Override
+    public SensorsSnapshotAvro remove(String hubId, String sensorId, Instant timestamp) {
+        SensorsSnapshotAvro snapshot = snapshots.get(hubId);
+        if (snapshot == null || !snapshot.getSensorsState().containsKey(sensorId)) {
+            return null;
+        }
+        sensorCount--;
+        SensorsSnapshotAvro updated = new SensorsSnapshotAvro(
+                hubId,
+                timestamp.isAfter(snapshot.getTimestamp()) ? timestamp : snapshot.getTimestamp(),
+                PersistentMap.copyOf(snapshot.getSensorsState()).minus(sensorId)
+        );
+        snapshots.put(hubId, updated);
+        return updated;
+    }
+
+    @Override
+    public void load(SensorsSnapshotAvro snapshot) {
+        evict(snapshot.getHubId());
+        sensorCount += snapshot.getSensorsState().size();
+        snapshots.put(snapshot.getHubId(), new SensorsSnapshotAvro(
+                snapshot.getHubId(), snapshot.getTimestamp(), PersistentMap.copyOf(snapshot.getSensorsState())));
+    }
+
+    @Override
+    public int evict(String hubId) {
+        SensorsSnapshotAvro snapshot = snapshots.remove(hubId);
+        if (snapshot == null) {
+            return 0;
+        }
+        sensorCount -= snapshot.getSensorsState().size();
+        return snapshot.getSensorsState().size();
+    }
+
+    @Override
+    public Collection<String> hubIds() {
+        return snapshots.keySet();
+    }
+
+    @Override
+    public long sensorCount() {
+        return sensorCount;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return snapshots.size() * HUB_BYTES + sensorCount * SENSOR_BYTES;
+    }
+
+    @Override
+    public long position() {
+        return -1;
+    }
+
+    @Override
+    public void checkpoint(long position) {
+    }
+
+    @Override
+    public void clear() {
+        snapshots.clear();
+        sensorCount = 0;
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    private PersistentMap<String, SensorStateAvro> sensorsState(String hubId) {
+        SensorsSnapshotAvro snapshot = snapshots.get(hubId);
+        return snapshot == null ? PersistentMap.empty() : PersistentMap.copyOf(snapshot.getSensorsState());
+    }
+}
@@ -0,0 +1,656 @@
+package ru.yandex.practicum.telemetry.aggregator.service.state;
+
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.CRC32;
+
+/**
+ * Снапшоты хабов в файле-журнале {@code <name>.log}: каждая запись — последняя версия снапшота хаба
+ * или отметка о его удалении. В куче остаются индекс хаб → запись и ограниченный кеш недавно
+ * использованных снапшотов, поэтому состояние может быть больше кучи.
+ * <p>
+ * Изменения копятся в памяти и передаются пачкой фоновому потоку записи: при накоплении {@code writeBatch}
+ * изменённых хабов и в контрольной точке. Поток кодирует пачку и дописывает её в журнал, а пока она не записана,
+ * её снапшоты читаются из памяти. Поток-владелец ждёт записи, только если очередь из {@value #WRITE_QUEUE_BATCHES}
+ * пачек заполнена.
+ * <p>
+ * Контрольная точка завершается записью с позицией партиции; при открытии журнал обрезается по последней такой
+ * записи, поэтому после падения процесса состояние совпадает с последней контрольной точкой. Когда живые записи
+ * занимают меньше половины журнала, он переписывается в контрольной точке после записи всех пачек.
+ */
+public final class LogSensorStateStore implements SensorStateStore {
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte CHECKPOINT = 3;
+
+    // длина, контрольная сумма и тип записи
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES * 2 + 1;
+    private static final long COMPACTION_MIN_BYTES = 64L << 20;
+    private static final int WRITE_QUEUE_BATCHES = 4;
+
+    // запись индекса с hubId
+    private static final long INDEX_BYTES = 120;
+    // снапшот в кеше, как в HeapSensorStateStore
+    private static final long CACHED_HUB_BYTES = 200;
+    private static final long CACHED_SENSOR_BYTES = 180;
+
+    private final Path file;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final int cacheHubs;
+    private final int writeBatch;
+
+    private final Map<String, Location> index = new HashMap<>();
+    private final Map<String, SensorsSnapshotAvro> cache = new LinkedHashMap<>(16, 0.75f, true);
+    // изменённые и ещё не переданные на запись хабы; null — хаб удалён
+    private Map<String, SensorsSnapshotAvro> pending = new LinkedHashMap<>();
+    // переданные на запись пачки, от старых к новым; убираются, когда поток записи сообщит их положение в журнале
+    private final Deque<Batch> writing = new ArrayDeque<>();
+    private int writingHubs;
+    private long batchSequence;
+
+    private final DatumReader<SensorsSnapshotAvro> reader = new SpecificDatumReader<>(SensorsSnapshotAvro.class);
+    private final CRC32 crc = new CRC32();
+    private BinaryDecoder decoder;
+
+    private final BlockingQueue<WriteTask> writes = new ArrayBlockingQueue<>(WRITE_QUEUE_BATCHES);
+    private final Queue<Written> written = new ConcurrentLinkedQueue<>();
+    private final Writer logWriter = new Writer();
+    private final Thread writerThread;
+
+    private volatile FileChannel channel;
+    private long liveBytes;
+    private long sensorCount;
+    private long checkpointPosition = -1;
+    private boolean modified;
+
+    public LogSensorStateStore(Path directory, String name, int cacheHubs, int writeBatch) {
+        this.file = directory.resolve(name + ".log");
+        this.cacheHubs = Math.max(1, cacheHubs);
+        this.writeBatch = Math.max(1, writeBatch);
+        try {
+            Files.createDirectories(directory);
+            // журнал заменяется при уплотнении, поэтому блокируется отдельный файл
+            this.lockChannel = FileChannel.open(directory.resolve(name + ".lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.lock = lockChannel.tryLock();
+            if (lock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("Журнал состояния " + name + " занят другим процессом");
+            }
+            this.channel = openLog(file);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал состояния " + name, e);
+        }
+        this.writerThread = new Thread(logWriter, "state-log-writer-" + name);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public boolean read(String hubId, String sensorId, SensorReading into) {
+        SensorsSnapshotAvro snapshot = snapshot(hubId);
+        SensorStateAvro state = snapshot == null ? null : snapshot.getSensorsState().get(sensorId);
+        if (state == null) {
+            return false;
+        }
+        into.set(state);
+        return true;
+    }
+
+    @Override
+    public SensorsSnapshotAvro update(String hubId, String sensorId, SensorStateAvro state, Instant timestamp) {
+        SensorsSnapshotAvro snapshot = snapshot(hubId);
+        PersistentMap<String, SensorStateAvro> sensorsState = snapshot == null
+                ? PersistentMap.empty()
+                : PersistentMap.copyOf(snapshot.getSensorsState());
+        if (!sensorsState.containsKey(sensorId)) {
+            sensorCount++;
+        }
+        return stage(new SensorsSnapshotAvro(hubId, timestamp, sensorsState.plus(sensorId, state)));
+    }
+
+    @Override
+    public SensorsSnapshotAvro remove(String hubId, String sensorId, Instant timestamp) {
+        SensorsSnapshotAvro snapshot = snapshot(hubId);
+        if (snapshot == null || !snapshot.getSensorsState().containsKey(sensorId)) {
+            return null;
+        }
+        sensorCount--;
+        return stage(new SensorsSnapshotAvro(
+                hubId,
+                timestamp.isAfter(snapshot.getTimestamp()) ? timestamp : snapshot.getTimestamp(),
+                PersistentMap.copyOf(snapshot.getSensorsState()).minus(sensorId)
+        ));
+    }
+
+    @Override
+    public void load(SensorsSnapshotAvro snapshot) {
+        evict(snapshot.getHubId());
+        sensorCount += snapshot.getSensorsState().size();
+        stage(new SensorsSnapshotAvro(
+                snapshot.getHubId(), snapshot.getTimestamp(), PersistentMap.copyOf(snapshot.getSensorsState())));
+    }
+
+    @Override
+    public int evict(String hubId) {
+        Location location = index.remove(hubId);
+        if (location == null) {
+            return 0;
+        }
+        cache.remove(hubId);
+        liveBytes -= location.length();
+        sensorCount -= location.sensors();
+        modified = true;
+        pending.put(hubId, null);
+        flushIfFull();
+        return location.sensors();
+    }
+
+    @Override
+    public Collection<String> hubIds() {
+        return index.keySet();
+    }
+
+    @Override
+    public long sensorCount() {
+        return sensorCount;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        long hubs = index.size();
+        long cached = cache.size() + pending.size() + writingHubs;
+        long sensorsPerHub = hubs == 0 ? 0 : sensorCount / hubs;
+        return hubs * INDEX_BYTES + cached * (CACHED_HUB_BYTES + sensorsPerHub * CACHED_SENSOR_BYTES);
+    }
+
+    @Override
+    public long position() {
+        return modified ? -1 : checkpointPosition;
+    }
+
+    @Override
+    public void checkpoint(long position) {
+        flush();
+        // журнал уплотняется редко, и только тогда контрольная точка ждёт записи всех пачек
+        if (logWriter.end >= COMPACTION_MIN_BYTES && liveBytes * 2 < logWriter.end) {
+            awaitWrites();
+            if (liveBytes * 2 < logWriter.end) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Не удалось уплотнить журнал состояния", e);
+                }
+            }
+        }
+        submit(new Checkpoint(position));
+        checkpointPosition = position;
+        modified = false;
+    }
+
+    @Override
+    public void clear() {
+        // ещё не взятые потоком записи пачки не нужны
+        writes.clear();
+        drainWriter();
+        written.clear();
+        writing.clear();
+        writingHubs = 0;
+        logWriter.failure = null;
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось очистить журнал состояния", e);
+        }
+        index.clear();
+        cache.clear();
+        pending.clear();
+        logWriter.end = 0;
+        liveBytes = 0;
+        sensorCount = 0;
+        checkpointPosition = -1;
+        modified = true;
+    }
+
+    @Override
+    public void close() {
+        // переданные пачки и контрольная точка дописываются, непереданные изменения не нужны:
+        // после открытия журнал всё равно обрезается по контрольной точке
+        try {
+            writes.put(new Stop());
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось закрыть журнал состояния", e);
+        }
+    }
+
+    private SensorsSnapshotAvro snapshot(String hubId) {
+        collect();
+        if (pending.containsKey(hubId)) {
+            return pending.get(hubId);
+        }
+        for (Iterator<Batch> iterator = writing.descendingIterator(); iterator.hasNext(); ) {
+            Batch batch = iterator.next();
+            if (batch.snapshots().containsKey(hubId)) {
+                return batch.snapshots().get(hubId);
+            }
+        }
+        SensorsSnapshotAvro cached = cache.get(hubId);
+        if (cached != null) {
+            return cached;
+        }
+        Location location = index.get(hubId);
+        if (location == null) {
+            return null;
+        }
+
+        SensorsSnapshotAvro snapshot = read(location);
+        snapshot.setSensorsState(PersistentMap.copyOf(snapshot.getSensorsState()));
+        cache.put(hubId, snapshot);
+        trimCache();
+        return snapshot;
+    }
+
+    private SensorsSnapshotAvro stage(SensorsSnapshotAvro snapshot) {
+        String hubId = snapshot.getHubId();
+        // пока снапшот не записан, смещение указывает на его пачку
+        Location previous = index.put(hubId, new Location(-1 - batchSequence, 0, snapshot.getSensorsState().size()));
+        if (previous != null) {
+            liveBytes -= previous.length();
+        }
+        cache.remove(hubId);
+        pending.put(hubId, snapshot);
+        modified = true;
+        flushIfFull();
+        return snapshot;
+    }
+
+    private void flushIfFull() {
+        if (pending.size() >= writeBatch) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        collect();
+        if (pending.isEmpty()) {
+            return;
+        }
+        Batch batch = new Batch(batchSequence++, pending);
+        pending = new LinkedHashMap<>();
+        writing.addLast(batch);
+        writingHubs += batch.snapshots().size();
+        submit(batch);
+    }
+
+    private void submit(WriteTask task) {
+        try {
+            writes.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Прервано ожидание записи журнала состояния", e);
+        }
+    }
+
+    /**
+     * Ждёт, пока поток записи выполнит всё переданное ему, и применяет положения записанных снапшотов.
+     */
+    private void awaitWrites() {
+        drainWriter();
+        collect();
+    }
+
+    private void drainWriter() {
+        CountDownLatch done = new CountDownLatch(1);
+        submit(new Barrier(done));
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Прервано ожидание записи журнала состояния", e);
+        }
+    }
+
+    /**
+     * Переносит в индекс положения записанных пачек. Хаб, изменённый или удалённый после передачи пачки,
+     * остаётся с новым состоянием, а его запись в пачке сразу считается мёртвой.
+     */
+    private void collect() {
+        IOException failure = logWriter.failure;
+        if (failure != null) {
+            throw new UncheckedIOException("Не удалось дописать журнал состояния", failure);
+        }
+
+        Written result;
+        while ((result = written.poll()) != null) {
+            Batch batch = writing.pollFirst();
+            writingHubs -= batch.snapshots().size();
+            long staged = -1 - result.sequence();
+            result.locations().forEach((hubId, location) -> {
+                Location current = index.get(hubId);
+                if (current != null && current.offset() == staged) {
+                    index.put(hubId, location);
+                    liveBytes += location.length();
+                    cache.put(hubId, batch.snapshots().get(hubId));
+                }
+            });
+        }
+        trimCache();
+    }
+
+    /**
+     * Переписывает живые записи в новый журнал и атомарно заменяет им старый.
+     */
+    private void compact() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        Map<String, Location> relocated = new HashMap<>(index.size() * 2);
+        try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long offset = 0;
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                ByteBuffer record = readRaw(location);
+                while (record.hasRemaining()) {
+                    target.write(record, offset + record.position());
+                }
+                relocated.put(entry.getKey(), new Location(offset, location.length(), location.sensors()));
+                offset += location.length();
+            }
+            target.force(true);
+        }
+        channel.close();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = openLog(file);
+        index.putAll(relocated);
+        logWriter.end = channel.size();
+        liveBytes = logWriter.end;
+    }
+
+    /**
+     * Обрезает журнал по последней контрольной точке и строит индекс по записям до неё.
+     */
+    private void recover() throws IOException {
+        long checkpointEnd = 0;
+        long offset = 0;
+        try (DataInputStream in = logStream()) {
+            while (true) {
+                Record record = readRecord(in);
+                if (record == null) {
+                    break;
+                }
+                offset += record.length();
+                if (record.kind() == CHECKPOINT) {
+                    checkpointEnd = offset;
+                    checkpointPosition = new DataInputStream(new ByteArrayInputStream(record.body())).readLong();
+                }
+            }
+        }
+        channel.truncate(checkpointEnd);
+        logWriter.end = checkpointEnd;
+
+        offset = 0;
+        try (DataInputStream in = logStream()) {
+            while (offset < checkpointEnd) {
+                Record record = readRecord(in);
+                DataInputStream body = new DataInputStream(new ByteArrayInputStream(record.body()));
+                if (record.kind() == PUT) {
+                    String hubId = body.readUTF();
+                    int sensors = body.readInt();
+                    Location previous = index.put(hubId, new Location(offset, record.length(), sensors));
+                    if (previous != null) {
+                        liveBytes -= previous.length();
+                        sensorCount -= previous.sensors();
+                    }
+                    liveBytes += record.length();
+                    sensorCount += sensors;
+                } else if (record.kind() == DELETE) {
+                    Location previous = index.remove(body.readUTF());
+                    if (previous != null) {
+                        liveBytes -= previous.length();
+                        sensorCount -= previous.sensors();
+                    }
+                }
+                offset += record.length();
+            }
+        }
+    }
+
+    private SensorsSnapshotAvro read(Location location) {
+        try {
+            ByteBuffer record = readRaw(location);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    record.array(), RECORD_HEADER_BYTES, location.length() - RECORD_HEADER_BYTES));
+            in.readUTF();
+            in.readInt();
+            decoder = DecoderFactory.get().binaryDecoder(in, decoder);
+            return reader.read(null, decoder);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать журнал состояния", e);
+        }
+    }
+
+    private ByteBuffer readRaw(Location location) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(location.length());
+        while (record.hasRemaining()) {
+            if (channel.read(record, location.offset() + record.position()) < 0) {
+                throw new EOFException("Запись журнала состояния обрезана");
+            }
+        }
+        record.flip();
+        return record;
+    }
+
+    /**
+     * @return запись или {@code null} на конце журнала, в том числе на недописанной или повреждённой записи
+     */
+    private Record readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 1) {
+                return null;
+            }
+            byte kind = in.readByte();
+            byte[] body = new byte[length - 1];
+            in.readFully(body);
+            crc.reset();
+            crc.update(kind);
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            return new Record(kind, body, Integer.BYTES * 2 + length);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void trimCache() {
+        Iterator<String> iterator = cache.keySet().iterator();
+        while (cache.size() > cacheHubs) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private DataInputStream logStream() throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+    }
+
+    private static FileChannel openLog(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private record Location(long offset, int length, int sensors) {
+    }
+
+    private record Record(byte kind, byte[] body, int length) {
+    }
+
+    private interface WriteTask {
+    }
+
+    private record Batch(long sequence, Map<String, SensorsSnapshotAvro> snapshots) implements WriteTask {
+    }
+
+    private record Checkpoint(long position) implements WriteTask {
+    }
+
+    private record Barrier(CountDownLatch done) implements WriteTask {
+    }
+
+    private record Stop() implements WriteTask {
+    }
+
+    private record Written(long sequence, Map<String, Location> locations) {
+    }
+
+    /**
+     * Единственный, кто дописывает журнал, пока поток-владелец не дождался его в {@link #awaitWrites}.
+     */
+    private final class Writer implements Runnable {
+
+        private final DatumWriter<SensorsSnapshotAvro> writer = new SpecificDatumWriter<>(SensorsSnapshotAvro.class);
+        private final CRC32 crc = new CRC32();
+        private BinaryEncoder encoder;
+
+        private volatile long end;
+        private volatile IOException failure;
+
+        @Override
+        public void run() {
+            while (true) {
+                WriteTask task;
+                try {
+                    task = writes.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task instanceof Stop) {
+                    return;
+                }
+                if (task instanceof Barrier barrier) {
+                    barrier.done().countDown();
+                    continue;
+                }
+                // после сбоя журнал не дописывается: состояние после последней контрольной точки всё равно потеряно
+                if (failure != null) {
+                    continue;
+                }
+                try {
+                    if (task instanceof Batch batch) {
+                        write(batch);
+                    } else if (task instanceof Checkpoint checkpoint) {
+                        ByteArrayOutputStream record = new ByteArrayOutputStream();
+                        ByteArrayOutputStream body = new ByteArrayOutputStream(Long.BYTES);
+                        new DataOutputStream(body).writeLong(checkpoint.position());
+                        appendRecord(record, CHECKPOINT, body.toByteArray());
+                        append(record.toByteArray());
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+
+        private void write(Batch batch) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Map<String, Location> locations = new HashMap<>(batch.snapshots().size() * 2);
+            for (Map.Entry<String, SensorsSnapshotAvro> entry : batch.snapshots().entrySet()) {
+                String hubId = entry.getKey();
+                SensorsSnapshotAvro snapshot = entry.getValue();
+                long offset = end + bytes.size();
+                if (snapshot == null) {
+                    ByteArrayOutputStream body = new ByteArrayOutputStream();
+                    new DataOutputStream(body).writeUTF(hubId);
+                    appendRecord(bytes, DELETE, body.toByteArray());
+                } else {
+                    int length = appendRecord(bytes, PUT, encode(snapshot));
+                    locations.put(hubId, new Location(offset, length, snapshot.getSensorsState().size()));
+                }
+            }
+            append(bytes.toByteArray());
+            written.add(new Written(batch.sequence(), locations));
+        }
+
+        /**
+         * Тело PUT: hubId и число датчиков, чтобы индекс строился без разбора снапшота, затем снапшот в Avro.
+         */
+        private byte[] encode(SensorsSnapshotAvro snapshot) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeUTF(snapshot.getHubId());
+            out.writeInt(snapshot.getSensorsState().size());
+            encoder = EncoderFactory.get().directBinaryEncoder(body, encoder);
+            writer.write(snapshot, encoder);
+            return body.toByteArray();
+        }
+
+        private int appendRecord(ByteArrayOutputStream batch, byte kind, byte[] body) throws IOException {
+            crc.reset();
+            crc.update(kind);
+            crc.update(body);
+            DataOutputStream out = new DataOutputStream(batch);
+            out.writeInt(body.length + 1);
+            out.writeInt((int) crc.getValue());
+            out.writeByte(kind);
+            out.write(body);
+            return RECORD_HEADER_BYTES + body.length;
+        }
+
+        private void append(byte[] bytes) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, end + buffer.position());
+            }
+            end += bytes.length;
+        }
+    }
+}
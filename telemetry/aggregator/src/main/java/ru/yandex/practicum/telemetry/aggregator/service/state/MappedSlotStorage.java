@@ -0,0 +1,149 @@
+package ru.yandex.practicum.telemetry.aggregator.service.state;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Слоты в файле, отображённом в память: {@code <name>.slots} — заголовок и блоки слотов,
+ * {@code <name>.ids} — словарь идентификаторов, записи которого дописываются в конец.
+ * <p>
+ * Записи в отображённую память попадают в страничный кеш сразу, поэтому переживают падение процесса,
+ * но не операционной системы. Файл блокируется, чтобы его не открыли два процесса.
+ */
+final class MappedSlotStorage implements SlotStorage {
+
+    private final int headerBytes;
+    private final int chunkBytes;
+    private final Path idsFile;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final int existingChunks;
+
+    private DataOutputStream ids;
+
+    MappedSlotStorage(Path directory, String name, int headerBytes, int chunkBytes) {
+        this.headerBytes = headerBytes;
+        this.chunkBytes = chunkBytes;
+        this.idsFile = directory.resolve(name + ".ids");
+        try {
+            Files.createDirectories(directory);
+            this.channel = FileChannel.open(directory.resolve(name + ".slots"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+                throw new IllegalStateException("Файл состояния " + name + " занят другим процессом");
+            }
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerBytes);
+            this.existingChunks = (int) ((channel.size() - headerBytes) / chunkBytes);
+            this.ids = openIds();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть файл состояния " + name, e);
+        }
+    }
+
+    @Override
+    public ByteBuffer header() {
+        return header;
+    }
+
+    @Override
+    public ByteBuffer chunk(int index) {
+        try {
+            while (chunks.size() <= index) {
+                long offset = headerBytes + (long) chunks.size() * chunkBytes;
+                chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, offset, chunkBytes));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось расширить файл состояния", e);
+        }
+        return chunks.get(index);
+    }
+
+    @Override
+    public int chunkCount() {
+        return Math.max(existingChunks, chunks.size());
+    }
+
+    @Override
+    public List<String> loadIds() {
+        List<String> result = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(idsFile)))) {
+            while (true) {
+                result.add(in.readUTF());
+            }
+        } catch (EOFException ignored) {
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать словарь состояния", e);
+        }
+    }
+
+    @Override
+    public void appendId(String id) {
+        try {
+            ids.writeUTF(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось дописать словарь состояния", e);
+        }
+    }
+
+    @Override
+    public void rewriteIds(List<String> values) {
+        try {
+            ids.close();
+            Path tmp = idsFile.resolveSibling(idsFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                for (String value : values) {
+                    out.writeUTF(value);
+                }
+            }
+            Files.move(tmp, idsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            ids = openIds();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось перезаписать словарь состояния", e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            ids.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать словарь состояния", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            ids.close();
+            lock.release();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось закрыть файл состояния", e);
+        }
+    }
+
+    private DataOutputStream openIds() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(idsFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+    }
+}
@@ -0,0 +1,390 @@
+package ru.yandex.practicum.telemetry.aggregator.service.state;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Неизменяемый ассоциативный массив на основе HAMT (hash array mapped trie).
+ * <p>
+ * {@link #plus} и {@link #minus} возвращают новую версию, копируя только путь от корня до изменённого листа
+ * (не больше семи узлов), остальная структура разделяется с предыдущей версией. Поэтому любую версию можно
+ * безопасно отдать другому потоку, например на сериализацию продюсеру. Методы изменения {@link Map}
+ * не поддерживаются.
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private Set<Entry<K, V>> entrySet;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentMap<?, ?> persistent) {
+            return (PersistentMap<K, V>) persistent;
+        }
+        PersistentMap<K, V> result = empty();
+        for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            result = result.plus(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    public PersistentMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key, "key");
+        int hash = hash(key);
+        if (root == null) {
+            return new PersistentMap<>(BitmapNode.single(hash, 0, new SimpleImmutableEntry<>(key, value)), 1);
+        }
+
+        boolean[] added = new boolean[1];
+        Node updated = root.put(0, hash, key, value, added);
+        return updated == root ? this : new PersistentMap<>(updated, added[0] ? size + 1 : size);
+    }
+
+    public PersistentMap<K, V> minus(Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        Node updated = root.remove(0, hash(key), key);
+        if (updated == root) {
+            return this;
+        }
+        return updated == null ? empty() : new PersistentMap<>(updated, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        Entry<K, V> entry = (Entry<K, V>) root.find(0, hash(key), key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root != null && key != null && root.find(0, hash(key), key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static Object[] replace(Object[] slots, int index, Object slot) {
+        Object[] copy = slots.clone();
+        copy[index] = slot;
+        return copy;
+    }
+
+    private static Object[] insert(Object[] slots, int index, Object slot) {
+        Object[] copy = new Object[slots.length + 1];
+        System.arraycopy(slots, 0, copy, 0, index);
+        copy[index] = slot;
+        System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+        return copy;
+    }
+
+    private static Object[] delete(Object[] slots, int index) {
+        Object[] copy = new Object[slots.length - 1];
+        System.arraycopy(slots, 0, copy, 0, index);
+        System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+        return copy;
+    }
+
+    /**
+     * Узел дерева. Элемент {@code slots} — либо лист ({@link Entry}), либо дочерний узел.
+     */
+    private abstract static class Node {
+
+        final Object[] slots;
+
+        Node(Object[] slots) {
+            this.slots = slots;
+        }
+
+        abstract Entry<?, ?> find(int shift, int hash, Object key);
+
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * @return {@code this}, если ключа нет; {@code null}, если узел опустел
+         */
+        abstract Node remove(int shift, int hash, Object key);
+
+        /**
+         * Единственный лист узла без дочерних узлов, иначе {@code null}; позволяет схлопнуть узел в родителе.
+         */
+        Entry<?, ?> singleEntry() {
+            return slots.length == 1 && slots[0] instanceof Entry<?, ?> entry ? entry : null;
+        }
+    }
+
+    private static final class BitmapNode extends Node {
+
+        private final int bitmap;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            super(slots);
+            this.bitmap = bitmap;
+        }
+
+        static BitmapNode single(int hash, int shift, Object slot) {
+            return new BitmapNode(bit(hash, shift), new Object[]{slot});
+        }
+
+        @Override
+        Entry<?, ?> find(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[index(bit)];
+            if (slot instanceof Node node) {
+                return node.find(shift + BITS, hash, key);
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) slot;
+            return key.equals(entry.getKey()) ? entry : null;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, insert(slots, index, new SimpleImmutableEntry<>(key, value)));
+            }
+
+            Object slot = slots[index];
+            if (slot instanceof Node node) {
+                Node updated = node.put(shift + BITS, hash, key, value, added);
+                return updated == node ? this : new BitmapNode(bitmap, replace(slots, index, updated));
+            }
+
+            Entry<?, ?> entry = (Entry<?, ?>) slot;
+            if (key.equals(entry.getKey())) {
+                if (entry.getValue() == value) {
+                    return this;
+                }
+                return new BitmapNode(bitmap, replace(slots, index, new SimpleImmutableEntry<>(key, value)));
+            }
+
+            added[0] = true;
+            Node merged = merge(shift + BITS, entry, hash(entry.getKey()), new SimpleImmutableEntry<>(key, value), hash);
+            return new BitmapNode(bitmap, replace(slots, index, merged));
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+
+            int index = index(bit);
+            Object slot = slots[index];
+            if (slot instanceof Node node) {
+                Node updated = node.remove(shift + BITS, hash, key);
+                if (updated == node) {
+                    return this;
+                }
+                if (updated == null) {
+                    return without(bit, index);
+                }
+                Entry<?, ?> single = updated.singleEntry();
+                return new BitmapNode(bitmap, replace(slots, index, single != null ? single : updated));
+            }
+
+            Entry<?, ?> entry = (Entry<?, ?>) slot;
+            return key.equals(entry.getKey()) ? without(bit, index) : this;
+        }
+
+        private Node without(int bit, int index) {
+            return slots.length == 1 ? null : new BitmapNode(bitmap & ~bit, delete(slots, index));
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        private static Node merge(int shift, Entry<?, ?> first, int firstHash, Entry<?, ?> second, int secondHash) {
+            if (firstHash == secondHash) {
+                return new CollisionNode(firstHash, new Object[]{first, second});
+            }
+            int firstBit = bit(firstHash, shift);
+            int secondBit = bit(secondHash, shift);
+            if (firstBit == secondBit) {
+                return new BitmapNode(firstBit, new Object[]{merge(shift + BITS, first, firstHash, second, secondHash)});
+            }
+            Object[] slots = Integer.compareUnsigned(firstBit, secondBit) < 0
+                    ? new Object[]{first, second}
+                    : new Object[]{second, first};
+            return new BitmapNode(firstBit | secondBit, slots);
+        }
+    }
+
+    /**
+     * Листья с полностью совпадающим хешем.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+
+        CollisionNode(int hash, Object[] slots) {
+            super(slots);
+            this.hash = hash;
+        }
+
+        @Override
+        Entry<?, ?> find(int shift, int hash, Object key) {
+            if (hash != this.hash) {
+                return null;
+            }
+            int index = indexOf(key);
+            return index < 0 ? null : (Entry<?, ?>) slots[index];
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                return BitmapNode.single(this.hash, shift, this).put(shift, hash, key, value, added);
+            }
+            int index = indexOf(key);
+            if (index < 0) {
+                added[0] = true;
+                return new CollisionNode(hash, insert(slots, slots.length, new SimpleImmutableEntry<>(key, value)));
+            }
+            if (((Entry<?, ?>) slots[index]).getValue() == value) {
+                return this;
+            }
+            return new CollisionNode(hash, replace(slots, index, new SimpleImmutableEntry<>(key, value)));
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            if (hash != this.hash) {
+                return this;
+            }
+            int index = indexOf(key);
+            if (index < 0) {
+                return this;
+            }
+            return slots.length == 1 ? null : new CollisionNode(hash, delete(slots, index));
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < slots.length; i++) {
+                if (key.equals(((Entry<?, ?>) slots[i]).getKey())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+
+        private final Deque<Object[]> slotStack = new ArrayDeque<>();
+        private final Deque<Integer> indexStack = new ArrayDeque<>();
+
+        private Entry<K, V> next;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                slotStack.push(root.slots);
+                indexStack.push(0);
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> result = next;
+            advance();
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (!slotStack.isEmpty()) {
+                Object[] slots = slotStack.peek();
+                int index = indexStack.pop();
+                if (index >= slots.length) {
+                    slotStack.pop();
+                    continue;
+                }
+                indexStack.push(index + 1);
+
+                Object slot = slots[index];
+                if (slot instanceof Node node) {
+                    slotStack.push(node.slots);
+                    indexStack.push(0);
+                } else {
+                    next = (Entry<K, V>) slot;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.yandex.practicum.telemetry.aggregator.service.state;
+
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+import java.time.Instant;
+
+/**
+ * Показание датчика в примитивах для сравнения на горячем пути: время в миллисекундах и поля показаний.
+ * <p>
+ * Объект изменяемый и переиспользуется владельцем шарда, чтобы проверка нового события не создавала объектов.
+ * Поля по типам:
+ * <ul>
+ *     <li>{@link #CLIMATE}: first — температура °C, second — влажность, third — CO2;</li>
+ *     <li>{@link #LIGHT}: first — качество связи, second — освещённость;</li>
+ *     <li>{@link #MOTION}: first — качество связи, second — напряжение, flag — движение;</li>
+ *     <li>{@link #SWITCH}: flag — состояние;</li>
+ *     <li>{@link #TEMPERATURE}: first — °C, second — °F.</li>
+ * </ul>
+ */
+public final class SensorReading {
+
+    public static final int CLIMATE = 1;
+    public static final int LIGHT = 2;
+    public static final int MOTION = 3;
+    public static final int SWITCH = 4;
+    public static final int TEMPERATURE = 5;
+
+    private long timestamp;
+    private int type;
+    private int first;
+    private int second;
+    private int third;
+    private boolean flag;
+
+    public SensorReading set(SensorStateAvro state) {
+        return set(state.getTimestamp(), state.getData());
+    }
+
+    public SensorReading set(Instant timestamp, Object data) {
+        if (data instanceof ClimateSensorAvro climate) {
+            return set(timestamp.toEpochMilli(), CLIMATE,
+                    climate.getTemperatureC(), climate.getHumidity(), climate.getCo2Level(), false);
+        }
+        if (data instanceof LightSensorAvro light) {
+            return set(timestamp.toEpochMilli(), LIGHT, light.getLinkQuality(), light.getLuminosity(), 0, false);
+        }
+        if (data instanceof MotionSensorAvro motion) {
+            return set(timestamp.toEpochMilli(), MOTION,
+                    motion.getLinkQuality(), motion.getVoltage(), 0, motion.getMotion());
+        }
+        if (data instanceof SwitchSensorAvro switchSensor) {
+            return set(timestamp.toEpochMilli(), SWITCH, 0, 0, 0, switchSensor.getState());
+        }
+        if (data instanceof TemperatureSensorAvro temperature) {
+            return set(timestamp.toEpochMilli(), TEMPERATURE,
+                    temperature.getTemperatureC(), temperature.getTemperatureF(), 0, false);
+        }
+        throw new IllegalArgumentException("Неизвестный тип показаний: " + data);
+    }
+
+    public SensorReading set(long timestamp, int type, int first, int second, int third, boolean flag) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.first = first;
+        this.second = second;
+        this.third = third;
+        this.flag = flag;
+        return this;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public int type() {
+        return type;
+    }
+
+    public int first() {
+        return first;
+    }
+
+    public int second() {
+        return second;
+    }
+
+    public int third() {
+        return third;
+    }
+
+    public boolean flag() {
+        return flag;
+    }
+}
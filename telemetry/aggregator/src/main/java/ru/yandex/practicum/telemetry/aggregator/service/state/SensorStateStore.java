@@ -0,0 +1,64 @@
+package ru.yandex.practicum.telemetry.aggregator.service.state;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Хранилище состояния датчиков одного шарда. Используется только из потока-владельца шарда.
+ * <p>
+ * Возвращаемые снапшоты не изменяются хранилищем после выпуска и могут быть переданы продюсеру.
+ * Хранилище с сохранением на диск помнит позицию партиции, до которой оно построено: {@link #position()}
+ * возвращает её, только если после {@link #checkpoint} состояние не менялось.
+ */
+public interface SensorStateStore extends AutoCloseable {
+
+    /**
+     * Заполняет {@code into} сохранённым показанием датчика, не создавая объектов там, где это позволяет хранилище.
+     *
+     * @return {@code false}, если хаба или датчика нет
+     */
+    boolean read(String hubId, String sensorId, SensorReading into);
+
+    /**
+     * Сохраняет состояние датчика и выставляет время снапшота хаба.
+     */
+    SensorsSnapshotAvro update(String hubId, String sensorId, SensorStateAvro state, Instant timestamp);
+
+    /**
+     * Удаляет датчик; время снапшота не уменьшается.
+     *
+     * @return снапшот хаба после удаления или {@code null}, если датчика нет
+     */
+    SensorsSnapshotAvro remove(String hubId, String sensorId, Instant timestamp);
+
+    /**
+     * Загружает снапшот хаба целиком, например восстановленный из топика снапшотов.
+     */
+    void load(SensorsSnapshotAvro snapshot);
+
+    /**
+     * @return число удалённых датчиков хаба
+     */
+    int evict(String hubId);
+
+    Collection<String> hubIds();
+
+    long sensorCount();
+
+    long estimatedBytes();
+
+    /**
+     * @return позиция последней контрольной точки или {@code -1}, если состояние изменялось после неё
+     */
+    long position();
+
+    void checkpoint(long position);
+
+    void clear();
+
+    @Override
+    void close();
+}
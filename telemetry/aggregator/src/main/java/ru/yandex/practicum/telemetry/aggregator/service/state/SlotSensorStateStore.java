@@ -0,0 +1,646 @@
+package ru.yandex.practicum.telemetry.aggregator.service.state;
+
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Состояние датчиков в слотах фиксированного размера вне кучи или в файле, отображённом в память.
+ * <p>
+ * Каждый датчик занимает один слот в {@value #SLOT_BYTES} байт, ещё один слот хранит время снапшота хаба.
+ * Строковые идентификаторы хабов и датчиков заменены номерами в словаре, в куче остаются только словарь
+ * и индекс хаб → слоты.
+ * <p>
+ * Для {@code cacheHubs} недавно изменённых хабов в куче держится {@link PersistentMap} их датчиков: обновление
+ * меняет в нём только изменённый датчик, и выпущенные снапшоты не меняются. Хаб вне кеша при следующем
+ * изменении один раз собирается из слотов.
+ * <p>
+ * Заголовок хранит позицию контрольной точки и признак того, что после неё состояние не менялось;
+ * при открытии файла без этого признака состояние отбрасывается.
+ */
+public final class SlotSensorStateStore implements SensorStateStore {
+
+    static final int HEADER_BYTES = 64;
+    static final int SLOT_BYTES = 48;
+    static final int CHUNK_SLOTS = 1 << 14;
+    static final int CHUNK_BYTES = CHUNK_SLOTS * SLOT_BYTES;
+
+    private static final int MAGIC = 0x41475354;
+    private static final int VERSION = 1;
+
+    // заголовок
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_SLOT_BYTES = 8;
+    private static final int H_CLEAN = 12;
+    private static final int H_POSITION = 16;
+
+    // слот; номер хаба хранится со сдвигом на единицу, 0 — свободный слот
+    private static final int S_HUB = 0;
+    private static final int S_SENSOR = 4;
+    private static final int S_TIMESTAMP = 8;
+    private static final int S_TYPE = 16;
+    private static final int S_FLAG = 17;
+    private static final int S_A = 20;
+    private static final int S_B = 24;
+    private static final int S_C = 28;
+    private static final int S_NESTED_TIMESTAMP = 32;
+    private static final int S_NESTED_HUB = 40;
+
+    private static final byte HUB = 1;
+    private static final byte CLIMATE = 2;
+    private static final byte LIGHT = 3;
+    private static final byte MOTION = 4;
+    private static final byte SWITCH = 5;
+    private static final byte TEMPERATURE = 6;
+
+    // словарь перестраивается, когда неиспользуемых записей больше, чем используемых
+    private static final int COMPACTION_THRESHOLD = 1024;
+
+    // индекс хаба в куче: запись карты, объект и массивы
+    private static final long HUB_HEAP_BYTES = 120;
+    // запись словаря со строкой идентификатора
+    private static final long ID_HEAP_BYTES = 72;
+    // датчик в PersistentMap кешированного хаба, как в HeapSensorStateStore
+    private static final long VIEW_SENSOR_BYTES = 180;
+
+    private final SlotStorage storage;
+    private final ByteBuffer header;
+
+    private final Map<String, Hub> hubs = new HashMap<>();
+    // хабы с собранным PersistentMap, в порядке изменения
+    private final Map<String, Hub> viewed = new LinkedHashMap<>(16, 0.75f, true);
+    private final int cacheHubs;
+    private long viewedSensors;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] references = new int[64];
+    private int unreferenced;
+
+    private int[] freeSlots = new int[64];
+    private int freeCount;
+    private int nextSlot;
+    private int chunks;
+    private long sensorCount;
+    private boolean clean;
+
+    private SlotSensorStateStore(SlotStorage storage, int cacheHubs) {
+        this.storage = storage;
+        this.cacheHubs = Math.max(1, cacheHubs);
+        this.header = storage.header();
+
+        if (header.getInt(H_MAGIC) == MAGIC
+                && header.getInt(H_VERSION) == VERSION
+                && header.getInt(H_SLOT_BYTES) == SLOT_BYTES
+                && header.get(H_CLEAN) == 1) {
+            open();
+        } else {
+            clear();
+        }
+    }
+
+    public static SlotSensorStateStore offHeap(int cacheHubs) {
+        return new SlotSensorStateStore(new DirectSlotStorage(HEADER_BYTES, CHUNK_BYTES), cacheHubs);
+    }
+
+    public static SlotSensorStateStore mapped(Path directory, String name, int cacheHubs) {
+        return new SlotSensorStateStore(new MappedSlotStorage(directory, name, HEADER_BYTES, CHUNK_BYTES), cacheHubs);
+    }
+
+    @Override
+    public boolean read(String hubId, String sensorId, SensorReading into) {
+        Hub hub = hubs.get(hubId);
+        if (hub == null) {
+            return false;
+        }
+        int index = hub.indexOf(ids.getOrDefault(sensorId, -1));
+        if (index < 0) {
+            return false;
+        }
+
+        int slot = hub.slots[index];
+        int type = switch (getByte(slot, S_TYPE)) {
+            case CLIMATE -> SensorReading.CLIMATE;
+            case LIGHT -> SensorReading.LIGHT;
+            case MOTION -> SensorReading.MOTION;
+            case SWITCH -> SensorReading.SWITCH;
+            case TEMPERATURE -> SensorReading.TEMPERATURE;
+            default -> throw new IllegalStateException("Повреждён слот состояния " + slot);
+        };
+        // раскладка полей слота совпадает с SensorReading
+        into.set(getLong(slot, S_TIMESTAMP), type, getInt(slot, S_A), getInt(slot, S_B),
+                type == SensorReading.TEMPERATURE ? 0 : getInt(slot, S_C), getByte(slot, S_FLAG) == 1);
+        return true;
+    }
+
+    @Override
+    public SensorsSnapshotAvro update(String hubId, String sensorId, SensorStateAvro state, Instant timestamp) {
+        markDirty();
+        Hub hub = hubs.get(hubId);
+        if (hub == null) {
+            hub = createHub(hubId);
+        }
+        PersistentMap<String, SensorStateAvro> view = view(hub);
+        write(hub, sensorId, state);
+        putLong(hub.header, S_TIMESTAMP, timestamp.toEpochMilli());
+        if (!view.containsKey(sensorId)) {
+            viewedSensors++;
+        }
+        hub.view = view.plus(sensorId, state);
+        return snapshot(hub);
+    }
+
+    @Override
+    public SensorsSnapshotAvro remove(String hubId, String sensorId, Instant timestamp) {
+        Hub hub = hubs.get(hubId);
+        if (hub == null) {
+            return null;
+        }
+        int index = hub.indexOf(ids.getOrDefault(sensorId, -1));
+        if (index < 0) {
+            return null;
+        }
+
+        markDirty();
+        PersistentMap<String, SensorStateAvro> view = view(hub);
+        releaseSlot(hub.slots[index]);
+        hub.removeAt(index);
+        sensorCount--;
+        viewedSensors--;
+        hub.view = view.minus(sensorId);
+        if (timestamp.toEpochMilli() > getLong(hub.header, S_TIMESTAMP)) {
+            putLong(hub.header, S_TIMESTAMP, timestamp.toEpochMilli());
+        }
+        SensorsSnapshotAvro snapshot = snapshot(hub);
+        compactIfNeeded();
+        return snapshot;
+    }
+
+    @Override
+    public void load(SensorsSnapshotAvro snapshot) {
+        evict(snapshot.getHubId());
+        markDirty();
+        Hub hub = createHub(snapshot.getHubId());
+        snapshot.getSensorsState().forEach((sensorId, state) -> write(hub, sensorId, state));
+        putLong(hub.header, S_TIMESTAMP, snapshot.getTimestamp().toEpochMilli());
+    }
+
+    @Override
+    public int evict(String hubId) {
+        Hub hub = hubs.remove(hubId);
+        if (hub == null) {
+            return 0;
+        }
+        dropView(hubId);
+
+        markDirty();
+        for (int i = 0; i < hub.size; i++) {
+            releaseSlot(hub.slots[i]);
+        }
+        releaseSlot(hub.header);
+        sensorCount -= hub.size;
+        compactIfNeeded();
+        return hub.size;
+    }
+
+    @Override
+    public Collection<String> hubIds() {
+        return hubs.keySet();
+    }
+
+    @Override
+    public long sensorCount() {
+        return sensorCount;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return (long) chunks * CHUNK_BYTES + hubs.size() * HUB_HEAP_BYTES + names.size() * ID_HEAP_BYTES
+                + sensorCount * 2 * Integer.BYTES + viewedSensors * VIEW_SENSOR_BYTES;
+    }
+
+    @Override
+    public long position() {
+        return clean ? header.getLong(H_POSITION) : -1;
+    }
+
+    @Override
+    public void checkpoint(long position) {
+        storage.flush();
+        header.putLong(H_POSITION, position);
+        header.put(H_CLEAN, (byte) 1);
+        clean = true;
+    }
+
+    @Override
+    public void clear() {
+        // в файле от прошлого запуска могут остаться занятые слоты за пределами nextSlot
+        chunks = storage.chunkCount();
+        for (int slot = 0; slot < chunks * CHUNK_SLOTS; slot++) {
+            putInt(slot, S_HUB, 0);
+        }
+        hubs.clear();
+        viewed.clear();
+        viewedSensors = 0;
+        ids.clear();
+        names.clear();
+        Arrays.fill(references, 0);
+        unreferenced = 0;
+        freeCount = 0;
+        nextSlot = 0;
+        sensorCount = 0;
+        storage.rewriteIds(List.of());
+
+        header.putInt(H_MAGIC, MAGIC);
+        header.putInt(H_VERSION, VERSION);
+        header.putInt(H_SLOT_BYTES, SLOT_BYTES);
+        header.put(H_CLEAN, (byte) 0);
+        header.putLong(H_POSITION, -1);
+        clean = false;
+    }
+
+    @Override
+    public void close() {
+        storage.close();
+    }
+
+    /**
+     * Восстанавливает словарь и индекс хабов по слотам файла, сохранённого в контрольной точке.
+     */
+    private void open() {
+        for (String id : storage.loadIds()) {
+            ids.put(id, names.size());
+            names.add(id);
+        }
+        references = new int[Math.max(64, names.size())];
+        chunks = storage.chunkCount();
+        clean = true;
+
+        Map<Integer, Hub> byRef = new HashMap<>();
+        for (int slot = 0; slot < chunks * CHUNK_SLOTS; slot++) {
+            int hubRef = getInt(slot, S_HUB) - 1;
+            if (hubRef < 0) {
+                continue;
+            }
+            nextSlot = slot + 1;
+            Hub hub = byRef.computeIfAbsent(hubRef, Hub::new);
+            if (getByte(slot, S_TYPE) == HUB) {
+                hub.header = slot;
+                references[hubRef]++;
+            } else {
+                int sensorRef = getInt(slot, S_SENSOR);
+                hub.add(slot, sensorRef);
+                references[sensorRef]++;
+                if (getByte(slot, S_TYPE) == TEMPERATURE) {
+                    references[getInt(slot, S_C)]++;
+                    references[getInt(slot, S_NESTED_HUB)]++;
+                }
+                sensorCount++;
+            }
+        }
+        for (int slot = nextSlot - 1; slot >= 0; slot--) {
+            if (getInt(slot, S_HUB) == 0) {
+                pushFree(slot);
+            }
+        }
+        for (Hub hub : byRef.values()) {
+            hubs.put(names.get(hub.ref), hub);
+        }
+        for (int reference : references) {
+            if (reference == 0) {
+                unreferenced++;
+            }
+        }
+        unreferenced -= references.length - names.size();
+    }
+
+    private Hub createHub(String hubId) {
+        Hub hub = new Hub(acquireId(hubId));
+        hub.header = allocateSlot();
+        putInt(hub.header, S_HUB, hub.ref + 1);
+        putInt(hub.header, S_SENSOR, -1);
+        putByte(hub.header, S_TYPE, HUB);
+        hubs.put(hubId, hub);
+        return hub;
+    }
+
+    private void write(Hub hub, String sensorId, SensorStateAvro state) {
+        int index = hub.indexOf(ids.getOrDefault(sensorId, -1));
+        int slot;
+        if (index < 0) {
+            int sensorRef = acquireId(sensorId);
+            slot = allocateSlot();
+            putInt(slot, S_HUB, hub.ref + 1);
+            putInt(slot, S_SENSOR, sensorRef);
+            hub.add(slot, sensorRef);
+            sensorCount++;
+        } else {
+            slot = hub.slots[index];
+            if (getByte(slot, S_TYPE) == TEMPERATURE) {
+                releaseId(getInt(slot, S_C));
+                releaseId(getInt(slot, S_NESTED_HUB));
+            }
+        }
+        encode(slot, state);
+    }
+
+    private SensorsSnapshotAvro snapshot(Hub hub) {
+        return new SensorsSnapshotAvro(
+                names.get(hub.ref), Instant.ofEpochMilli(getLong(hub.header, S_TIMESTAMP)), hub.view);
+    }
+
+    /**
+     * Датчики хаба до изменения; хаб становится последним в кеше, самый давний хаб сверх кеша теряет свой.
+     */
+    private PersistentMap<String, SensorStateAvro> view(Hub hub) {
+        String hubId = names.get(hub.ref);
+        if (hub.view == null) {
+            PersistentMap<String, SensorStateAvro> view = PersistentMap.empty();
+            for (int i = 0; i < hub.size; i++) {
+                view = view.plus(names.get(hub.sensors[i]), decode(hub.slots[i]));
+            }
+            hub.view = view;
+            viewedSensors += hub.size;
+        }
+        viewed.put(hubId, hub);
+
+        Iterator<String> iterator = viewed.keySet().iterator();
+        while (viewed.size() > cacheHubs) {
+            String eldest = iterator.next();
+            Hub evicted = hubs.get(eldest);
+            iterator.remove();
+            viewedSensors -= evicted.view.size();
+            evicted.view = null;
+        }
+        return hub.view;
+    }
+
+    private void dropView(String hubId) {
+        Hub hub = viewed.remove(hubId);
+        if (hub != null) {
+            viewedSensors -= hub.view.size();
+            hub.view = null;
+        }
+    }
+
+    private void encode(int slot, SensorStateAvro state) {
+        putLong(slot, S_TIMESTAMP, state.getTimestamp().toEpochMilli());
+        // слот мог принадлежать датчику другого типа
+        putInt(slot, S_A, 0);
+        putInt(slot, S_B, 0);
+        putInt(slot, S_C, 0);
+        putByte(slot, S_FLAG, (byte) 0);
+        Object data = state.getData();
+        if (data instanceof ClimateSensorAvro climate) {
+            putByte(slot, S_TYPE, CLIMATE);
+            putInt(slot, S_A, climate.getTemperatureC());
+            putInt(slot, S_B, climate.getHumidity());
+            putInt(slot, S_C, climate.getCo2Level());
+        } else if (data instanceof LightSensorAvro light) {
+            putByte(slot, S_TYPE, LIGHT);
+            putInt(slot, S_A, light.getLinkQuality());
+            putInt(slot, S_B, light.getLuminosity());
+        } else if (data instanceof MotionSensorAvro motion) {
+            putByte(slot, S_TYPE, MOTION);
+            putInt(slot, S_A, motion.getLinkQuality());
+            putByte(slot, S_FLAG, motion.getMotion() ? (byte) 1 : 0);
+            putInt(slot, S_B, motion.getVoltage());
+        } else if (data instanceof SwitchSensorAvro switchSensor) {
+            putByte(slot, S_TYPE, SWITCH);
+            putByte(slot, S_FLAG, switchSensor.getState() ? (byte) 1 : 0);
+        } else if (data instanceof TemperatureSensorAvro temperature) {
+            putByte(slot, S_TYPE, TEMPERATURE);
+            putInt(slot, S_A, temperature.getTemperatureC());
+            putInt(slot, S_B, temperature.getTemperatureF());
+            putInt(slot, S_C, acquireId(temperature.getId()));
+            putInt(slot, S_NESTED_HUB, acquireId(temperature.getHubId()));
+            putLong(slot, S_NESTED_TIMESTAMP, temperature.getTimestamp().toEpochMilli());
+        } else {
+            throw new IllegalArgumentException("Неизвестный тип показаний: " + data);
+        }
+    }
+
+    private SensorStateAvro decode(int slot) {
+        Object data = switch (getByte(slot, S_TYPE)) {
+            case CLIMATE -> new ClimateSensorAvro(getInt(slot, S_A), getInt(slot, S_B), getInt(slot, S_C));
+            case LIGHT -> new LightSensorAvro(getInt(slot, S_A), getInt(slot, S_B));
+            case MOTION -> new MotionSensorAvro(getInt(slot, S_A), getByte(slot, S_FLAG) == 1, getInt(slot, S_B));
+            case SWITCH -> new SwitchSensorAvro(getByte(slot, S_FLAG) == 1);
+            case TEMPERATURE -> new TemperatureSensorAvro(
+                    names.get(getInt(slot, S_C)),
+                    names.get(getInt(slot, S_NESTED_HUB)),
+                    Instant.ofEpochMilli(getLong(slot, S_NESTED_TIMESTAMP)),
+                    getInt(slot, S_A),
+                    getInt(slot, S_B));
+            default -> throw new IllegalStateException("Повреждён слот состояния " + slot);
+        };
+        return new SensorStateAvro(Instant.ofEpochMilli(getLong(slot, S_TIMESTAMP)), data);
+    }
+
+    private int allocateSlot() {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+        int chunk = slot / CHUNK_SLOTS;
+        if (chunk >= chunks) {
+            storage.chunk(chunk);
+            chunks = chunk + 1;
+        }
+        return slot;
+    }
+
+    private void releaseSlot(int slot) {
+        if (getByte(slot, S_TYPE) == HUB) {
+            releaseId(getInt(slot, S_HUB) - 1);
+        } else {
+            releaseId(getInt(slot, S_SENSOR));
+            if (getByte(slot, S_TYPE) == TEMPERATURE) {
+                releaseId(getInt(slot, S_C));
+                releaseId(getInt(slot, S_NESTED_HUB));
+            }
+        }
+        putInt(slot, S_HUB, 0);
+        pushFree(slot);
+    }
+
+    private void pushFree(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private int acquireId(String id) {
+        Integer ref = ids.get(id);
+        if (ref == null) {
+            ref = names.size();
+            ids.put(id, ref);
+            names.add(id);
+            storage.appendId(id);
+            if (ref == references.length) {
+                references = Arrays.copyOf(references, ref * 2);
+            }
+        } else if (references[ref] == 0) {
+            unreferenced--;
+        }
+        references[ref]++;
+        return ref;
+    }
+
+    private void releaseId(int ref) {
+        if (--references[ref] == 0) {
+            unreferenced++;
+        }
+    }
+
+    /**
+     * Идентификаторы удалённых хабов и датчиков остаются в словаре, пока их не станет больше используемых;
+     * тогда словарь перестраивается и номера в слотах переписываются.
+     */
+    private void compactIfNeeded() {
+        if (unreferenced < COMPACTION_THRESHOLD || unreferenced <= names.size() - unreferenced) {
+            return;
+        }
+
+        int[] remap = new int[names.size()];
+        List<String> live = new ArrayList<>(names.size() - unreferenced);
+        for (int ref = 0; ref < names.size(); ref++) {
+            if (references[ref] > 0) {
+                remap[ref] = live.size();
+                live.add(names.get(ref));
+            } else {
+                remap[ref] = -1;
+            }
+        }
+
+        for (int slot = 0; slot < nextSlot; slot++) {
+            int hubRef = getInt(slot, S_HUB) - 1;
+            if (hubRef < 0) {
+                continue;
+            }
+            putInt(slot, S_HUB, remap[hubRef] + 1);
+            if (getByte(slot, S_TYPE) != HUB) {
+                putInt(slot, S_SENSOR, remap[getInt(slot, S_SENSOR)]);
+            }
+            if (getByte(slot, S_TYPE) == TEMPERATURE) {
+                putInt(slot, S_C, remap[getInt(slot, S_C)]);
+                putInt(slot, S_NESTED_HUB, remap[getInt(slot, S_NESTED_HUB)]);
+            }
+        }
+        for (Hub hub : hubs.values()) {
+            hub.ref = remap[hub.ref];
+            for (int i = 0; i < hub.size; i++) {
+                hub.sensors[i] = remap[hub.sensors[i]];
+            }
+        }
+
+        int[] liveReferences = new int[Math.max(64, live.size())];
+        for (int ref = 0; ref < names.size(); ref++) {
+            if (remap[ref] >= 0) {
+                liveReferences[remap[ref]] = references[ref];
+            }
+        }
+        references = liveReferences;
+        unreferenced = 0;
+        names.clear();
+        names.addAll(live);
+        ids.clear();
+        for (int ref = 0; ref < names.size(); ref++) {
+            ids.put(names.get(ref), ref);
+        }
+        storage.rewriteIds(names);
+    }
+
+    private void markDirty() {
+        if (clean) {
+            header.put(H_CLEAN, (byte) 0);
+            clean = false;
+        }
+    }
+
+    private ByteBuffer chunkOf(int slot) {
+        return storage.chunk(slot / CHUNK_SLOTS);
+    }
+
+    private static int offset(int slot, int field) {
+        return (slot % CHUNK_SLOTS) * SLOT_BYTES + field;
+    }
+
+    private int getInt(int slot, int field) {
+        return chunkOf(slot).getInt(offset(slot, field));
+    }
+
+    private void putInt(int slot, int field, int value) {
+        chunkOf(slot).putInt(offset(slot, field), value);
+    }
+
+    private long getLong(int slot, int field) {
+        return chunkOf(slot).getLong(offset(slot, field));
+    }
+
+    private void putLong(int slot, int field, long value) {
+        chunkOf(slot).putLong(offset(slot, field), value);
+    }
+
+    private byte getByte(int slot, int field) {
+        return chunkOf(slot).get(offset(slot, field));
+    }
+
+    private void putByte(int slot, int field, byte value) {
+        chunkOf(slot).put(offset(slot, field), value);
+    }
+
+    private static final class Hub {
+
+        private int ref;
+        private int header;
+        // null, если хаба нет в кеше
+        private PersistentMap<String, SensorStateAvro> view;
+        private int[] slots = new int[4];
+        private int[] sensors = new int[4];
+        private int size;
+
+        private Hub(int ref) {
+            this.ref = ref;
+        }
+
+        private int indexOf(int sensorRef) {
+            for (int i = 0; i < size; i++) {
+                if (sensors[i] == sensorRef) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void add(int slot, int sensorRef) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                sensors = Arrays.copyOf(sensors, size * 2);
+            }
+            slots[size] = slot;
+            sensors[size] = sensorRef;
+            size++;
+        }
+
+        private void removeAt(int index) {
+            size--;
+            slots[index] = slots[size];
+            sensors[index] = sensors[size];
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.telemetry.aggregator.service.state;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Память под слоты {@link SlotSensorStateStore}: заголовок, блоки слотов фиксированного размера
+ * и словарь идентификаторов.
+ */
+interface SlotStorage extends AutoCloseable {
+
+    ByteBuffer header();
+
+    /**
+     * Блок слотов с номером {@code index}; выделяется при первом обращении, блоки выделяются по порядку.
+     */
+    ByteBuffer chunk(int index);
+
+    /**
+     * Число блоков, уже существующих в хранилище, в том числе оставшихся от прошлого запуска.
+     */
+    int chunkCount();
+
+    List<String> loadIds();
+
+    void appendId(String id);
+
+    void rewriteIds(List<String> ids);
+
+    /**
+     * Доводит словарь до файла перед контрольной точкой.
+     */
+    void flush();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,97 @@
+package ru.yandex.practicum.telemetry.aggregator.config;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализатор снапшотов против прежней реализации, создававшей поток, кодировщик и writer на каждое сообщение.
+ * Байты на операцию - {@code gc.alloc.rate.norm} с {@code -prof gc}:
+ * <pre>
+ * mvn -Pjmh test -pl telemetry/aggregator -am -Djmh.args="aggregator.config.EventAvroSerializerBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventAvroSerializerBenchmark {
+
+    private static final String TOPIC = "telemetry.snapshots.v1";
+
+    @Param({"10", "200"})
+    private int sensors;
+
+    private final EventAvroSerializer serializer = new EventAvroSerializer();
+    private final ByteBufferPool pool = new ByteBufferPool(64 * 1024, 16);
+
+    private SensorsSnapshotAvro snapshot;
+
+    @Setup
+    public void setUp() {
+        Instant timestamp = Instant.parse("2024-05-01T12:00:00Z");
+        Map<String, SensorStateAvro> states = new HashMap<>();
+        for (int i = 0; i < sensors; i++) {
+            states.put("sensor-" + i, SensorStateAvro.newBuilder()
+                    .setTimestamp(timestamp.plusMillis(i))
+                    .setData(ClimateSensorAvro.newBuilder()
+                            .setTemperatureC(20 + i % 5)
+                            .setHumidity(40 + i % 7)
+                            .setCo2Level(700 + i)
+                            .build())
+                    .build());
+        }
+        snapshot = SensorsSnapshotAvro.newBuilder()
+                .setHubId("hub-1f6a2c")
+                .setTimestamp(timestamp)
+                .setSensorsState(states)
+                .build();
+    }
+
+    @Benchmark
+    public byte[] perMessageWriter() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        new SpecificDatumWriter<SpecificRecordBase>(snapshot.getSchema()).write(snapshot, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] cachedWriter() {
+        return serializer.serialize(TOPIC, snapshot);
+    }
+
+    @Benchmark
+    public int pooledBuffer() {
+        ByteBuffer buffer = serializer.serialize(TOPIC, snapshot, pool);
+        int size = buffer.remaining();
+        pool.release(buffer);
+        return size;
+    }
+}
@@ -0,0 +1,179 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.EventAvroSerializer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность выдачи снапшотов в режимах доставки воркера на живом брокере: одна операция - один
+ * poll, то есть {@code batch} снапшотов и смещения партиции датчиков.
+ * <ul>
+ *     <li>{@code at-least-once} - отправка и commitAsync, как в SensorSnapshotWorker по умолчанию;</li>
+ *     <li>{@code exactly-once} - транзакция с отправкой и sendOffsetsToTransaction,
+ *     как при {@code aggregator.transactions.enabled}.</li>
+ * </ul>
+ * Снапшоты в секунду - счётчик {@code records}. Брокер и топики поднимаются из compose.yaml в корне репозитория,
+ * адрес брокера меняется параметром {@code -p bootstrap=...}:
+ * <pre>
+ * docker compose up -d kafka kafka-init-topics
+ * mvn -Pjmh test -pl telemetry/aggregator -am -Djmh.args="aggregator.service.DeliveryModeBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DeliveryModeBenchmark {
+
+    private static final String SENSOR_TOPIC = "telemetry.sensors.v1";
+    private static final String SNAPSHOT_TOPIC = "telemetry.snapshots.benchmark.v1";
+    private static final String GROUP_ID = "telemetry.aggregator.benchmark";
+    private static final int HUBS = 1_000;
+
+    @Param({"localhost:9092"})
+    private String bootstrap;
+
+    @Param({"at-least-once", "exactly-once"})
+    private String delivery;
+
+    @Param({"100", "1000"})
+    private int batch;
+
+    @Param({"10"})
+    private int sensors;
+
+    private Producer<String, SpecificRecordBase> producer;
+    private Consumer<String, String> consumer;
+    private boolean transactional;
+    private SensorsSnapshotAvro[] snapshots;
+    private TopicPartition partition;
+    private long offset;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Emitted {
+
+        public long records;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            records = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        transactional = delivery.equals("exactly-once");
+
+        Properties producerConfig = new Properties();
+        producerConfig.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        producerConfig.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        producerConfig.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, EventAvroSerializer.class.getName());
+        if (transactional) {
+            producerConfig.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, "aggregator-benchmark-" + UUID.randomUUID());
+            producerConfig.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true");
+            producerConfig.put(ProducerConfig.ACKS_CONFIG, "all");
+        }
+        producer = new KafkaProducer<>(producerConfig);
+        if (transactional) {
+            producer.initTransactions();
+        }
+
+        Properties consumerConfig = new Properties();
+        consumerConfig.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        consumerConfig.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        consumerConfig.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        consumerConfig.setProperty(ConsumerConfig.GROUP_ID_CONFIG, GROUP_ID);
+        consumerConfig.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        consumer = new KafkaConsumer<>(consumerConfig);
+        // смещения только коммитятся, записи партиции не читаются
+        partition = new TopicPartition(SENSOR_TOPIC, 0);
+        consumer.assign(List.of(partition));
+        consumer.pause(List.of(partition));
+
+        Instant timestamp = Instant.parse("2024-05-01T12:00:00Z");
+        snapshots = new SensorsSnapshotAvro[HUBS];
+        for (int hub = 0; hub < HUBS; hub++) {
+            Map<String, SensorStateAvro> states = new HashMap<>();
+            for (int i = 0; i < sensors; i++) {
+                states.put("sensor-" + i, SensorStateAvro.newBuilder()
+                        .setTimestamp(timestamp.plusMillis(i))
+                        .setData(ClimateSensorAvro.newBuilder()
+                                .setTemperatureC(20 + i % 5)
+                                .setHumidity(40 + i % 7)
+                                .setCo2Level(700 + i)
+                                .build())
+                        .build());
+            }
+            snapshots[hub] = new SensorsSnapshotAvro("hub-" + hub, timestamp, states);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        producer.close();
+        consumer.close();
+    }
+
+    @Benchmark
+    public void poll(Emitted emitted) {
+        // обрабатывает завершения commitAsync, как poll воркера
+        consumer.poll(Duration.ZERO);
+
+        if (transactional) {
+            producer.beginTransaction();
+        }
+        for (int i = 0; i < batch; i++) {
+            SensorsSnapshotAvro snapshot = snapshots[(int) ((offset + i) % HUBS)];
+            producer.send(new ProducerRecord<>(SNAPSHOT_TOPIC, snapshot.getHubId(), snapshot));
+        }
+        offset += batch;
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = Map.of(partition, new OffsetAndMetadata(offset));
+        if (transactional) {
+            producer.sendOffsetsToTransaction(offsets, consumer.groupMetadata());
+            producer.commitTransaction();
+        } else {
+            consumer.commitAsync(offsets, null);
+        }
+        emitted.records += batch;
+    }
+}
@@ -0,0 +1,179 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+import ru.yandex.practicum.telemetry.aggregator.config.EventAvroSerializer;
+import ru.yandex.practicum.telemetry.aggregator.config.EventTopic;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Объём выдачи {@link SnapshotEmitter} в режимах {@code FULL} и {@code DELTA}: одна операция - изменение одного
+ * датчика хаба и его снапшот или дельта, сериализованные продюсером. Счётчик {@code bytes} - байты в секунду
+ * при этом темпе изменений; байты на изменение - {@code bytes}, делённые на основной результат.
+ * Ключевые кадры дельт идут с интервалом по умолчанию.
+ * <pre>
+ * mvn -Pjmh test -pl telemetry/aggregator -am -Djmh.args="aggregator.service.EmissionModeBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmissionModeBenchmark {
+
+    private static final int HUBS = 1_000;
+    // MockProducer хранит отправленное; история сбрасывается каждые столько изменений
+    private static final int HISTORY = 1_024;
+
+    @Param({"FULL", "DELTA"})
+    private AggregatorProperties.EmissionMode mode;
+
+    @Param({"10", "200"})
+    private int sensors;
+
+    private SnapshotEmitter emitter;
+    private Sizing producer;
+    private SensorsSnapshotAvro[] snapshots;
+    private String[] sensorIds;
+    private SensorStateAvro[] states;
+    private Instant timestamp;
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Emitted {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        AggregatorProperties properties = new AggregatorProperties();
+        properties.getEmission().setMode(mode);
+        properties.getKafka().getProducer().setTopic(EventTopic.TELEMETRY_SNAPSHOT_TOPIC);
+        emitter = new SnapshotEmitter(properties, new SimpleMeterRegistry());
+        producer = new Sizing();
+
+        timestamp = Instant.parse("2024-05-01T12:00:00Z");
+        states = new SensorStateAvro[64];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = SensorStateAvro.newBuilder()
+                    .setTimestamp(timestamp.plusMillis(i))
+                    .setData(ClimateSensorAvro.newBuilder()
+                            .setTemperatureC(20 + i % 5)
+                            .setHumidity(40 + i % 7)
+                            .setCo2Level(700 + i)
+                            .build())
+                    .build();
+        }
+        sensorIds = new String[sensors];
+        for (int i = 0; i < sensors; i++) {
+            sensorIds[i] = "sensor-" + i;
+        }
+        snapshots = new SensorsSnapshotAvro[HUBS];
+        for (int hub = 0; hub < HUBS; hub++) {
+            Map<String, SensorStateAvro> sensorsState = new HashMap<>();
+            for (String sensorId : sensorIds) {
+                sensorsState.put(sensorId, states[0]);
+            }
+            snapshots[hub] = new SensorsSnapshotAvro("hub-" + hub, timestamp, sensorsState);
+            emitter.track(snapshots[hub].getHubId(), true);
+        }
+    }
+
+    @Benchmark
+    public void emit(Emitted emitted) {
+        int n = next++;
+        SensorsSnapshotAvro snapshot = snapshots[n % HUBS];
+        String sensorId = sensorIds[(n / HUBS) % sensors];
+        // продюсер сериализует запись в send, поэтому снапшот можно менять на месте
+        snapshot.getSensorsState().put(sensorId, states[n & (states.length - 1)]);
+        snapshot.setTimestamp(timestamp.plusMillis(n));
+
+        producer.bytes = 0;
+        emitter.emit(producer, snapshot, List.of(sensorId), List.of());
+        emitted.bytes += producer.bytes;
+        if (n % HISTORY == 0) {
+            producer.clear();
+        }
+    }
+
+    private static class Sizing extends MockProducer<String, SpecificRecordBase> {
+
+        private long bytes;
+
+        Sizing() {
+            this(new CountingSerializer());
+        }
+
+        private Sizing(CountingSerializer serializer) {
+            super(Cluster.empty(), true, new FirstPartition(), new StringSerializer(), serializer);
+            serializer.producer = this;
+        }
+    }
+
+    // MockProducer не заполняет serializedValueSize, поэтому байты считает сериализатор
+    private static class CountingSerializer implements Serializer<SpecificRecordBase> {
+
+        private final EventAvroSerializer serializer = new EventAvroSerializer();
+        private Sizing producer;
+
+        @Override
+        public byte[] serialize(String topic, SpecificRecordBase data) {
+            byte[] bytes = serializer.serialize(topic, data);
+            producer.bytes += bytes.length;
+            return bytes;
+        }
+    }
+
+    private static class FirstPartition implements Partitioner {
+
+        @Override
+        public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes,
+                             Cluster cluster) {
+            return 0;
+        }
+
+        @Override
+        public void configure(Map<String, ?> configs) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ru.yandex.practicum.telemetry.aggregator.service.state;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обновление датчика в хранилищах состояния шарда: {@code heap} - эталонное {@link HeapSensorStateStore},
+ * {@code off-heap} - слоты со всеми хабами в кеше снапшотов, {@code off-heap-cold} - слоты с кешем на 1% хабов,
+ * когда почти каждое обновление собирает снапшот хаба из слотов. Байты на операцию - {@code gc.alloc.rate.norm}
+ * с {@code -prof gc}:
+ * <pre>
+ * mvn -Pjmh test -pl telemetry/aggregator -am -Djmh.args="aggregator.service.state.SensorStateStoreBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorStateStoreBenchmark {
+
+    private static final int HUBS = 10_000;
+
+    @Param({"heap", "off-heap", "off-heap-cold"})
+    private String store;
+
+    @Param({"10", "50"})
+    private int sensors;
+
+    private SensorStateStore stateStore;
+    private String[] hubIds;
+    private String[] sensorIds;
+    private SensorStateAvro[] states;
+    private Instant timestamp;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        stateStore = switch (store) {
+            case "heap" -> new HeapSensorStateStore();
+            case "off-heap" -> SlotSensorStateStore.offHeap(HUBS);
+            case "off-heap-cold" -> SlotSensorStateStore.offHeap(HUBS / 100);
+            default -> throw new IllegalArgumentException(store);
+        };
+        hubIds = new String[HUBS];
+        for (int i = 0; i < HUBS; i++) {
+            hubIds[i] = "hub-" + i;
+        }
+        sensorIds = new String[sensors];
+        for (int i = 0; i < sensors; i++) {
+            sensorIds[i] = "sensor-" + i;
+        }
+        timestamp = Instant.parse("2024-05-01T12:00:00Z");
+        states = new SensorStateAvro[64];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = SensorStateAvro.newBuilder()
+                    .setTimestamp(timestamp.plusMillis(i))
+                    .setData(ClimateSensorAvro.newBuilder()
+                            .setTemperatureC(20 + i % 5)
+                            .setHumidity(40 + i % 7)
+                            .setCo2Level(700 + i)
+                            .build())
+                    .build();
+        }
+        for (String hubId : hubIds) {
+            for (String sensorId : sensorIds) {
+                stateStore.update(hubId, sensorId, states[0], timestamp);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        stateStore.close();
+    }
+
+    /**
+     * Хабы по кругу с шагом, взаимно простым с их числом, чтобы кеш off-heap-cold не угадывал следующий хаб.
+     */
+    @Benchmark
+    public SensorsSnapshotAvro update() {
+        int n = next++;
+        String hubId = hubIds[(int) ((n * 7919L) % HUBS)];
+        return stateStore.update(hubId, sensorIds[n % sensors], states[n & (states.length - 1)], timestamp);
+    }
+}
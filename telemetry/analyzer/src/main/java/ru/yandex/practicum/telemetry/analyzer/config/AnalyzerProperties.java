@@ -0,0 +1,76 @@
+package ru.yandex.practicum.telemetry.analyzer.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("analyzer")
+public class AnalyzerProperties {
+
+    private Snapshots snapshots = new Snapshots();
+
+    private Scenarios scenarios = new Scenarios();
+
+    private Actions actions = new Actions();
+
+    @Getter
+    @Setter
+    public static class Snapshots {
+
+        // FULL - full snapshots topic, DELTA - deltas materialized into per-hub state
+        private Source source = Source.FULL;
+
+        private String topic = "telemetry.snapshots.v1";
+
+        private String deltaTopic = "telemetry.snapshots.delta.v1";
+
+        // DELTA: the state of a hub without deltas for longer is dropped
+        private Duration hubTtl = Duration.ofHours(24);
+    }
+
+    @Getter
+    @Setter
+    public static class Scenarios {
+
+        // minimum time between two firings of a scenario; a scenario that turns true earlier fires when it ends
+        private Duration cooldown = Duration.ZERO;
+
+        // period after which a scenario that keeps holding fires again, 0 - only on a false -> true transition
+        private Duration rearm = Duration.ZERO;
+    }
+
+    @Getter
+    @Setter
+    public static class Actions {
+
+        // per call to the hub router, a whole stream in streaming mode
+        private Duration deadline = Duration.ofSeconds(5);
+
+        // calls to the hub router in flight per hub; 1 keeps the actions of a hub strictly ordered
+        private int maxInFlightPerHub = 1;
+
+        // actions waiting to be sent over all hubs, new actions are dropped above it
+        private int queueCapacity = 10_000;
+
+        // including the first attempt
+        private int maxAttempts = 3;
+
+        private Duration backoff = Duration.ofMillis(200);
+
+        private Duration maxBackoff = Duration.ofSeconds(5);
+
+        // send queued actions of a hub over one handleDeviceActionStream call instead of one call per action
+        private boolean streaming = false;
+
+        private int batchSize = 64;
+    }
+
+    public enum Source {
+        FULL,
+        DELTA
+    }
+}
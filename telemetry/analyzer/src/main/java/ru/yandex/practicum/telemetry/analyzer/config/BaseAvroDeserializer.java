@@ -1,22 +1,36 @@
 package ru.yandex.practicum.telemetry.analyzer.config;
 
 import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+
+import java.util.Map;
 
 public class BaseAvroDeserializer<T extends SpecificRecordBase> implements Deserializer<T> {
 
-    private static final Logger LOG = LoggerFactory.getLogger(BaseAvroDeserializer.class);
+    /**
+     * Reuse one record instance across calls. Only valid with {@code max.poll.records=1},
+     * since a consumer deserializes the whole poll batch before handing it out.
+     */
+    public static final String RECORD_REUSE_CONFIG = "avro.record.reuse";
 
     private DecoderFactory decoderFactory = DecoderFactory.get();
     protected final Schema schema;
 
+    // a deserializer belongs to a single consumer and is only called from its thread
+    private final DatumReader<T> reader;
+    private BinaryDecoder decoder;
+
+    private boolean reuseRecord;
+    private T reusedRecord;
+
     public BaseAvroDeserializer(Schema schema) {
         this(DecoderFactory.get(), schema);
     }
@@ -24,17 +38,35 @@ public class BaseAvroDeserializer<T extends SpecificRecordBase> implements Deser
     public BaseAvroDeserializer(DecoderFactory decoderFactory, Schema schema) {
         this.decoderFactory = decoderFactory;
         this.schema = schema;
+        this.reader = new SpecificDatumReader<>(schema);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        reuseRecord = Boolean.parseBoolean(String.valueOf(configs.get(RECORD_REUSE_CONFIG)));
+        if (reuseRecord && !"1".equals(String.valueOf(configs.get(ConsumerConfig.MAX_POLL_RECORDS_CONFIG)))) {
+            throw new ConfigException(RECORD_REUSE_CONFIG + " requires "
+                    + ConsumerConfig.MAX_POLL_RECORDS_CONFIG + "=1");
+        }
     }
 
     @Override
     public T deserialize(String topic, byte[] data) {
+        T result = deserialize(topic, data, reuseRecord ? reusedRecord : null);
+        if (reuseRecord && result != null) {
+            reusedRecord = result;
+        }
+        return result;
+    }
+
+    public T deserialize(String topic, byte[] data, T reuse) {
         try {
             if (data == null) {
                 return null;
             }
 
-            DatumReader<T> reader = new SpecificDatumReader<>(schema);
-            return reader.read(null, decoderFactory.binaryDecoder(data, null));
+            decoder = decoderFactory.binaryDecoder(data, decoder);
+            return reader.read(reuse, decoder);
 
         } catch (Exception e) {
             throw new SerializationException("Failed to deserialize Avro message from topic [" + topic + "]", e);
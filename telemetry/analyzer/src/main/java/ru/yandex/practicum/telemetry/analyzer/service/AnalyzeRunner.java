@@ -3,8 +3,11 @@ package ru.yandex.practicum.telemetry.analyzer.service;
 import lombok.RequiredArgsConstructor;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.telemetry.analyzer.config.AnalyzerProperties;
 import ru.yandex.practicum.telemetry.analyzer.service.kafka.HubEventProcessor;
+import ru.yandex.practicum.telemetry.analyzer.service.kafka.SnapshotDeltaProcessor;
 import ru.yandex.practicum.telemetry.analyzer.service.kafka.SnapshotProcessor;
+import ru.yandex.practicum.telemetry.analyzer.service.logic.ScenarioIndex;
 
 @Component
 @RequiredArgsConstructor
@@ -12,15 +15,22 @@ public class AnalyzeRunner implements CommandLineRunner {
 
     private final HubEventProcessor hubEventProcessor;
     private final SnapshotProcessor snapshotProcessor;
+    private final SnapshotDeltaProcessor snapshotDeltaProcessor;
+    private final ScenarioIndex scenarioIndex;
+    private final AnalyzerProperties properties;
 
     @Override
     public void run(String... args) {
+        // before the hub event thread starts, so no committed change is missed
+        scenarioIndex.load();
+
         Thread hubEventThread = new Thread(hubEventProcessor, "HubEventHandlerThread");
         hubEventThread.start();
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             hubEventProcessor.shutdown();
             snapshotProcessor.shutdown();
+            snapshotDeltaProcessor.shutdown();
             try {
                 hubEventThread.join();
             } catch (InterruptedException ignored) {
@@ -28,6 +38,10 @@ public class AnalyzeRunner implements CommandLineRunner {
             }
         }));
 
-        snapshotProcessor.run();
+        if (properties.getSnapshots().getSource() == AnalyzerProperties.Source.DELTA) {
+            snapshotDeltaProcessor.run();
+        } else {
+            snapshotProcessor.run();
+        }
     }
 }
@@ -4,7 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.*;
 import org.apache.kafka.common.errors.WakeupException;
-import org.apache.kafka.common.serialization.VoidDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 import ru.yandex.practicum.telemetry.analyzer.config.HubEventDeserializer;
@@ -22,7 +22,7 @@ public class HubEventProcessor implements Runnable {
     private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
 
     private volatile boolean running = true;
-    private KafkaConsumer<Void, HubEventAvro> consumer;
+    private KafkaConsumer<String, HubEventAvro> consumer;
 
     private final HubHandlerService hubHandlerService;
 
@@ -40,9 +40,9 @@ public class HubEventProcessor implements Runnable {
 
         try {
             while (running) {
-                ConsumerRecords<Void, HubEventAvro> records = consumer.poll(POLL_TIMEOUT);
+                ConsumerRecords<String, HubEventAvro> records = consumer.poll(POLL_TIMEOUT);
 
-                for (ConsumerRecord<Void, HubEventAvro> record : records) {
+                for (ConsumerRecord<String, HubEventAvro> record : records) {
                     hubHandlerService.handleRecord(record.value());
                 }
 
@@ -70,7 +70,7 @@ public class HubEventProcessor implements Runnable {
         properties.put(ConsumerConfig.CLIENT_ID_CONFIG, "HubEventConsumer");
         properties.put(ConsumerConfig.GROUP_ID_CONFIG, "consumer-client-hub");
         properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
-        properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, VoidDeserializer.class.getCanonicalName());
+        properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getCanonicalName());
         properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, HubEventDeserializer.class.getCanonicalName());
         return properties;
     }
@@ -0,0 +1,97 @@
+package ru.yandex.practicum.telemetry.analyzer.service.kafka;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.*;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.telemetry.analyzer.config.AnalyzerProperties;
+import ru.yandex.practicum.telemetry.analyzer.config.SnapshotDeltaDeserializer;
+import ru.yandex.practicum.telemetry.analyzer.service.logic.HubStateMaterializer;
+import ru.yandex.practicum.telemetry.analyzer.service.logic.SnapshotHandleService;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SnapshotDeltaProcessor implements Runnable {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+    private volatile boolean running = true;
+    private KafkaConsumer<String, SensorsSnapshotDeltaAvro> consumer;
+
+    private final HubStateMaterializer materializer;
+    private final SnapshotHandleService snapshotHandleService;
+    private final AnalyzerProperties properties;
+
+    public void shutdown() {
+        running = false;
+        if (consumer != null) {
+            consumer.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        consumer = new KafkaConsumer<>(getConsumerProperties());
+        consumer.subscribe(List.of(properties.getSnapshots().getDeltaTopic()), new ConsumerRebalanceListener() {
+            @Override
+            public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                if (!partitions.isEmpty()) {
+                    materializer.revoke(partitions.stream().map(TopicPartition::partition).toList());
+                }
+            }
+
+            @Override
+            public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            }
+        });
+
+        try {
+            while (running) {
+                ConsumerRecords<String, SensorsSnapshotDeltaAvro> records = consumer.poll(POLL_TIMEOUT);
+
+                for (ConsumerRecord<String, SensorsSnapshotDeltaAvro> record : records) {
+                    snapshotHandleService.handleRecord(materializer.apply(record.partition(), record.value()));
+                }
+                consumer.commitSync();
+            }
+        } catch (WakeupException e) {
+            if (running) {
+                log.error("Snapshot delta consumer was unexpectedly woken up", e);
+            }
+        } catch (Exception e) {
+            log.error("Error while processing snapshot deltas", e);
+        } finally {
+            try {
+                consumer.commitSync();
+            } catch (Exception e) {
+                log.warn("Error while committing offsets for snapshot deltas during shutdown", e);
+            }
+            log.info("Closing snapshot delta consumer");
+            consumer.close();
+        }
+    }
+
+    private static Properties getConsumerProperties() {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.CLIENT_ID_CONFIG, "SnapshotDeltaConsumer");
+        properties.put(ConsumerConfig.GROUP_ID_CONFIG, "consumer-client-snapshot-delta");
+        properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        properties.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        // only the partitions that move are revoked, the state of the rest is kept
+        properties.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getName());
+        properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getCanonicalName());
+        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, SnapshotDeltaDeserializer.class.getCanonicalName());
+        return properties;
+    }
+}
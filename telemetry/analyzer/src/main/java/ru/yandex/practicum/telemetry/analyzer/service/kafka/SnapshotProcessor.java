@@ -8,6 +8,7 @@ import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.VoidDeserializer;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.analyzer.config.AnalyzerProperties;
 import ru.yandex.practicum.telemetry.analyzer.config.SnapshotEventDeserializer;
 import ru.yandex.practicum.telemetry.analyzer.service.logic.SnapshotHandleService;
 
@@ -26,6 +27,7 @@ public class SnapshotProcessor implements Runnable {
     private KafkaConsumer<String, SensorsSnapshotAvro> consumer;
 
     private final SnapshotHandleService snapshotHandleService;
+    private final AnalyzerProperties properties;
 
     public void shutdown() {
         running = false;
@@ -37,7 +39,7 @@ public class SnapshotProcessor implements Runnable {
     @Override
     public void run() {
         consumer = new KafkaConsumer<>(getConsumerProperties());
-        consumer.subscribe(List.of("telemetry.snapshots.v1"));
+        consumer.subscribe(List.of(properties.getSnapshots().getTopic()));
 
         try {
             while (running) {
@@ -71,6 +73,7 @@ public class SnapshotProcessor implements Runnable {
         properties.put(ConsumerConfig.GROUP_ID_CONFIG, "consumer-client-snapshot");
         properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
         properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        properties.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
         properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getCanonicalName());
         properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, SnapshotEventDeserializer.class.getCanonicalName());
         return properties;
@@ -0,0 +1,360 @@
+package ru.yandex.practicum.telemetry.analyzer.service.logic;
+
+import com.google.protobuf.Empty;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.devh.boot.grpc.client.inject.GrpcClient;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.grpc.telemetry.event.ActionTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceActionRequest;
+import ru.yandex.practicum.grpc.telemetry.hubrouter.HubRouterControllerGrpc;
+import ru.yandex.practicum.grpc.telemetry.hubrouter.HubRouterControllerProto.DeviceActionsAck;
+import ru.yandex.practicum.telemetry.analyzer.config.AnalyzerProperties;
+import ru.yandex.practicum.telemetry.logging.LogSampling;
+import ru.yandex.practicum.telemetry.logging.SampledLogger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends device actions to the hub router without blocking the snapshot thread.
+ * <p>
+ * Actions are queued per hub and sent with the async stub, at most {@code maxInFlightPerHub} calls per hub
+ * at a time, so a slow hub does not hold back the others. Calls failing with a transient status are retried
+ * with exponential backoff; a call waiting for its retry keeps its slot, so with one call per hub the actions
+ * of a hub reach the router in order. After a deadline or an abort the router may have applied the action,
+ * so only idempotent actions are retried on those, never {@code INVERSE}.
+ * <p>
+ * In streaming mode the queued actions of a hub go out in batches over one {@code handleDeviceActionStream}
+ * call each; the actions the router did not accept are retried like a failed call.
+ */
+@Slf4j
+@Component
+public class DeviceActionDispatcher {
+
+    private static final SampledLogger actionLog = LogSampling.getLogger(DeviceActionDispatcher.class, "device-actions");
+
+    private static final Set<Status.Code> RETRYABLE = EnumSet.of(
+            Status.Code.UNAVAILABLE,
+            Status.Code.RESOURCE_EXHAUSTED
+    );
+
+    // the call may have reached the router, repeating it is safe only for idempotent actions
+    private static final Set<Status.Code> RETRYABLE_IF_IDEMPOTENT = EnumSet.of(
+            Status.Code.DEADLINE_EXCEEDED,
+            Status.Code.ABORTED
+    );
+
+    private final AnalyzerProperties.Actions properties;
+    private final ScheduledExecutorService retries;
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter dropped;
+    private final Counter retried;
+
+    private final Map<String, HubQueue> hubs = new ConcurrentHashMap<>();
+    // queued, in flight and waiting for a retry, over all hubs
+    private final AtomicInteger pending = new AtomicInteger();
+
+    @GrpcClient("hub-router")
+    private HubRouterControllerGrpc.HubRouterControllerStub hubRouterClient;
+
+    private ManagedChannel fallbackChannel;
+    private HubRouterControllerGrpc.HubRouterControllerStub fallbackStub;
+
+    public DeviceActionDispatcher(AnalyzerProperties properties, MeterRegistry registry) {
+        this.properties = properties.getActions();
+        this.retries = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DeviceActionRetryThread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sent = actionCounter(registry, "sent");
+        this.failed = actionCounter(registry, "failed");
+        this.dropped = actionCounter(registry, "dropped");
+        this.retried = actionCounter(registry, "retried");
+    }
+
+    private static Counter actionCounter(MeterRegistry registry, String result) {
+        return Counter.builder("analyzer.device.actions")
+                .description("Device actions dispatched to the hub router")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Queues the action and returns immediately; drops it when the queue is full.
+     */
+    public void dispatch(DeviceActionRequest request) {
+        if (pending.incrementAndGet() > properties.getQueueCapacity()) {
+            pending.decrementAndGet();
+            dropped.increment();
+            log.warn("Device action queue is full, dropping action for sensor {} in scenario '{}' on hub {}",
+                    request.getAction().getSensorId(), request.getScenarioName(), request.getHubId());
+            return;
+        }
+        PendingAction action = new PendingAction(request, 1);
+        HubQueue queue = hubs.computeIfAbsent(request.getHubId(), HubQueue::new);
+        while (!queue.enqueue(action)) {
+            // the queue went idle and was retired meanwhile
+            hubs.remove(request.getHubId(), queue);
+            queue = hubs.computeIfAbsent(request.getHubId(), HubQueue::new);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        long deadline = System.nanoTime() + properties.getDeadline().toNanos();
+        while (pending.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (pending.get() > 0) {
+            log.warn("Stopping with {} device actions not sent", pending.get());
+        }
+        retries.shutdownNow();
+        if (fallbackChannel != null) {
+            fallbackChannel.shutdown();
+        }
+    }
+
+    private HubRouterControllerGrpc.HubRouterControllerStub getHubRouterClient() {
+        if (hubRouterClient != null) {
+            return hubRouterClient;
+        }
+
+        if (fallbackStub == null) {
+            synchronized (this) {
+                if (fallbackStub == null) {
+                    fallbackChannel = ManagedChannelBuilder
+                            .forAddress("localhost", 59090)
+                            .usePlaintext()
+                            .build();
+                    fallbackStub = HubRouterControllerGrpc.newStub(fallbackChannel);
+                    log.info("Created fallback Hub Router gRPC client on localhost:59090");
+                }
+            }
+        }
+
+        return fallbackStub;
+    }
+
+    private long backoffMillis(int attempt) {
+        long base = properties.getBackoff().toMillis() << Math.min(attempt - 1, 20);
+        long capped = Math.min(base, properties.getMaxBackoff().toMillis());
+        // jitter keeps retries of many hubs from hitting a recovering router at once
+        return capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+    }
+
+    private static boolean retryable(Status.Code code, PendingAction action) {
+        return RETRYABLE.contains(code)
+                || RETRYABLE_IF_IDEMPOTENT.contains(code)
+                && action.request().getAction().getType() != ActionTypeProto.INVERSE;
+    }
+
+    private record PendingAction(DeviceActionRequest request, int attempt) {
+    }
+
+    private final class HubQueue {
+
+        private final String hubId;
+        private final ArrayDeque<PendingAction> queue = new ArrayDeque<>();
+        private int inFlight;
+        // removed from the hub map once idle, takes no more actions
+        private boolean retired;
+
+        HubQueue(String hubId) {
+            this.hubId = hubId;
+        }
+
+        /**
+         * @return {@code false} if the queue is retired and the action has to go to a new one
+         */
+        boolean enqueue(PendingAction action) {
+            synchronized (this) {
+                if (retired) {
+                    return false;
+                }
+                queue.addLast(action);
+            }
+            drain();
+            return true;
+        }
+
+        private void drain() {
+            int batchSize = properties.isStreaming() ? Math.max(1, properties.getBatchSize()) : 1;
+            List<List<PendingAction>> calls = new ArrayList<>();
+            boolean idle;
+            synchronized (this) {
+                while (inFlight < properties.getMaxInFlightPerHub() && !queue.isEmpty()) {
+                    List<PendingAction> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+                    while (batch.size() < batchSize && !queue.isEmpty()) {
+                        batch.add(queue.pollFirst());
+                    }
+                    inFlight++;
+                    calls.add(batch);
+                }
+                idle = inFlight == 0 && queue.isEmpty();
+                retired |= idle;
+            }
+            if (idle) {
+                hubs.remove(hubId, this);
+                return;
+            }
+            // calls start outside the lock, their callbacks may come back on another thread right away
+            calls.forEach(this::send);
+        }
+
+        private void send(List<PendingAction> batch) {
+            try {
+                HubRouterControllerGrpc.HubRouterControllerStub client = getHubRouterClient()
+                        .withDeadlineAfter(properties.getDeadline().toMillis(), TimeUnit.MILLISECONDS);
+                if (properties.isStreaming()) {
+                    StreamObserver<DeviceActionRequest> stream =
+                            client.handleDeviceActionStream(new CompletionObserver<>(batch));
+                    batch.forEach(action -> stream.onNext(action.request()));
+                    stream.onCompleted();
+                } else {
+                    client.handleDeviceAction(batch.get(0).request(), new CompletionObserver<Empty>(batch));
+                }
+            } catch (Exception e) {
+                // off the calling stack, a router failing right away would otherwise recurse through the whole queue
+                try {
+                    retries.execute(() -> complete(batch, 0, e));
+                } catch (Exception rejected) {
+                    complete(batch, 0, e);
+                }
+            }
+        }
+
+        /**
+         * @param accepted leading actions of the batch the router took, ignored on error
+         */
+        private void complete(List<PendingAction> batch, int accepted, Throwable error) {
+            List<PendingAction> rejected = batch;
+            if (error == null) {
+                List<PendingAction> done = batch.subList(0, accepted);
+                pending.addAndGet(-done.size());
+                sent.increment(done.size());
+                done.forEach(action -> actionLog.info(
+                        "Sent DeviceAction to Hub Router: hubId={}, scenario='{}', sensorId={}, type={}",
+                        hubId, action.request().getScenarioName(), action.request().getAction().getSensorId(),
+                        action.request().getAction().getType()));
+
+                rejected = batch.subList(accepted, batch.size());
+                if (!rejected.isEmpty()) {
+                    error = Status.RESOURCE_EXHAUSTED
+                            .withDescription("Hub router accepted " + accepted + " of " + batch.size() + " actions")
+                            .asException();
+                }
+            }
+
+            // a batch waiting for its retry keeps the slot, later actions of the hub must not overtake it
+            if (rejected.isEmpty() || !retryOrFail(rejected, error)) {
+                synchronized (this) {
+                    inFlight--;
+                }
+                drain();
+            }
+        }
+
+        /**
+         * @return {@code true} if a retry is scheduled for some of the actions
+         */
+        private boolean retryOrFail(List<PendingAction> batch, Throwable error) {
+            Status status = Status.fromThrowable(error);
+            int attempt = batch.get(0).attempt();
+            List<PendingAction> retry = new ArrayList<>();
+            List<PendingAction> fail = new ArrayList<>();
+            for (PendingAction action : batch) {
+                if (attempt < properties.getMaxAttempts() && retryable(status.getCode(), action)) {
+                    retry.add(new PendingAction(action.request(), attempt + 1));
+                } else {
+                    fail.add(action);
+                }
+            }
+
+            if (!retry.isEmpty()) {
+                long delay = backoffMillis(attempt);
+                try {
+                    retries.schedule(() -> requeue(retry), delay, TimeUnit.MILLISECONDS);
+                    log.warn("Failed to send {} actions to hub {} ({}), retry {} in {} ms",
+                            retry.size(), hubId, status.getCode(), attempt, delay);
+                    retried.increment(retry.size());
+                } catch (Exception e) {
+                    log.debug("Retry scheduler is stopped", e);
+                    fail.addAll(retry);
+                    retry.clear();
+                }
+            }
+
+            if (!fail.isEmpty()) {
+                pending.addAndGet(-fail.size());
+                failed.increment(fail.size());
+                log.error("Failed to send actions for sensors {} on hub {} after {} attempts",
+                        fail.stream().map(action -> action.request().getAction().getSensorId()).toList(),
+                        hubId, attempt, error);
+            }
+            return !retry.isEmpty();
+        }
+
+        private void requeue(List<PendingAction> batch) {
+            synchronized (this) {
+                inFlight--;
+                // ahead of the actions queued meanwhile, which came from later snapshots
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    queue.addFirst(batch.get(i));
+                }
+            }
+            drain();
+        }
+
+        private final class CompletionObserver<T> implements StreamObserver<T> {
+
+            private final List<PendingAction> batch;
+            private int accepted;
+
+            CompletionObserver(List<PendingAction> batch) {
+                this.batch = batch;
+                this.accepted = batch.size();
+            }
+
+            @Override
+            public void onNext(T value) {
+                if (value instanceof DeviceActionsAck ack) {
+                    accepted = (int) Math.max(0, Math.min(ack.getAccepted(), batch.size()));
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                complete(batch, 0, error);
+            }
+
+            @Override
+            public void onCompleted() {
+                complete(batch, accepted, null);
+            }
+        }
+    }
+}
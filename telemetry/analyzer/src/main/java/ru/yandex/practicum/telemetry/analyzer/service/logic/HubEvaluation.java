@@ -0,0 +1,176 @@
+package ru.yandex.practicum.telemetry.analyzer.service.logic;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.telemetry.analyzer.service.logic.ScenarioIndex.ConditionSlot;
+import ru.yandex.practicum.telemetry.analyzer.service.logic.ScenarioIndex.HubScenarios;
+import ru.yandex.practicum.telemetry.analyzer.service.logic.ScenarioIndex.IndexedScenario;
+import ru.yandex.practicum.telemetry.logging.LogSampling;
+import ru.yandex.practicum.telemetry.logging.SampledLogger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cached truth values of the conditions of one hub. A snapshot re-evaluates only the conditions of sensors
+ * whose state timestamp changed or which disappeared. Built for one {@link HubScenarios} version and used
+ * only from the snapshot thread.
+ * <p>
+ * Each scenario has an activation state: {@code IDLE} while its conditions do not all hold, {@code PENDING}
+ * once they turn true, {@code FIRED} after its actions were sent. A pending scenario fires as soon as
+ * {@code cooldown} has passed since its previous firing, so a flapping sensor cannot resend actions more often.
+ * With a non-zero {@code rearm} a scenario that keeps holding fires again every {@code rearm}.
+ * Time is the snapshot timestamp.
+ */
+class HubEvaluation {
+
+    private static final SampledLogger evaluationLog = LogSampling.getLogger(HubEvaluation.class, "scenario-evaluation");
+
+    private static final byte IDLE = 0;
+    private static final byte PENDING = 1;
+    private static final byte FIRED = 2;
+
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final String hubId;
+    private final HubScenarios scenarios;
+    private final long cooldownMillis;
+    private final long rearmMillis;
+
+    // state timestamps of the sensors referenced by conditions, as of the previous snapshot
+    private final Map<String, Instant> seen = new HashMap<>();
+    private final boolean[] truth;
+    private final int[] satisfied;
+
+    private final byte[] states;
+    private final long[] firedAt;
+    // scenarios whose state may change with time alone: pending ones, and fired ones when re-arming
+    private final BitSet waiting;
+    // the first snapshot settles every scenario, including those whose sensors are absent
+    private boolean settled;
+
+    HubEvaluation(String hubId,
+                  HubScenarios scenarios,
+                  Duration cooldown,
+                  Duration rearm,
+                  HubEvaluation previous) {
+        int count = scenarios.scenarios().size();
+        this.hubId = hubId;
+        this.scenarios = scenarios;
+        this.cooldownMillis = cooldown.toMillis();
+        this.rearmMillis = rearm.toMillis();
+        this.truth = new boolean[scenarios.slotCount()];
+        this.satisfied = new int[count];
+        this.states = new byte[count];
+        this.firedAt = new long[count];
+        this.waiting = new BitSet(count);
+
+        // unchanged scenarios keep their activation, so a change of another scenario of the hub does not refire them;
+        // a scenario redefined under the same name with other conditions or actions starts over
+        Map<IndexedScenario, Integer> previousIndex = new HashMap<>();
+        if (previous != null) {
+            for (int i = 0; i < previous.states.length; i++) {
+                previousIndex.put(previous.scenarios.scenarios().get(i), i);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            Integer from = previousIndex.get(scenarios.scenarios().get(i));
+            if (from == null) {
+                firedAt[i] = NEVER;
+            } else {
+                states[i] = previous.states[from];
+                firedAt[i] = previous.firedAt[from];
+                waiting.set(i, previous.waiting.get(from));
+            }
+        }
+    }
+
+    HubScenarios scenarios() {
+        return scenarios;
+    }
+
+    List<IndexedScenario> apply(Map<String, SensorStateAvro> sensors, Instant timestamp) {
+        BitSet touched = new BitSet(states.length);
+        if (!settled) {
+            touched.set(0, states.length);
+            settled = true;
+        }
+
+        Iterator<Map.Entry<String, Instant>> iterator = seen.entrySet().iterator();
+        while (iterator.hasNext()) {
+            String sensorId = iterator.next().getKey();
+            if (!sensors.containsKey(sensorId)) {
+                iterator.remove();
+                reevaluate(sensorId, null, touched);
+            }
+        }
+
+        for (Map.Entry<String, SensorStateAvro> entry : sensors.entrySet()) {
+            String sensorId = entry.getKey();
+            if (!scenarios.bySensor().containsKey(sensorId)) {
+                continue;
+            }
+            Instant stateTimestamp = entry.getValue().getTimestamp();
+            if (!stateTimestamp.equals(seen.put(sensorId, stateTimestamp))) {
+                reevaluate(sensorId, entry.getValue(), touched);
+            }
+        }
+
+        for (int scenario = touched.nextSetBit(0); scenario >= 0; scenario = touched.nextSetBit(scenario + 1)) {
+            int conditions = scenarios.conditionCounts()[scenario];
+            boolean holds = conditions > 0 && satisfied[scenario] == conditions;
+            if (!holds) {
+                states[scenario] = IDLE;
+                waiting.clear(scenario);
+            } else if (states[scenario] == IDLE) {
+                states[scenario] = PENDING;
+                waiting.set(scenario);
+            }
+        }
+
+        long now = timestamp.toEpochMilli();
+        List<IndexedScenario> fired = new ArrayList<>();
+        for (int scenario = waiting.nextSetBit(0); scenario >= 0; scenario = waiting.nextSetBit(scenario + 1)) {
+            boolean due = states[scenario] == PENDING
+                    ? elapsed(scenario, now, cooldownMillis)
+                    : rearmMillis > 0 && elapsed(scenario, now, rearmMillis);
+            if (due) {
+                states[scenario] = FIRED;
+                firedAt[scenario] = now;
+                if (rearmMillis <= 0) {
+                    waiting.clear(scenario);
+                }
+                fired.add(scenarios.scenarios().get(scenario));
+            } else if (states[scenario] == PENDING) {
+                evaluationLog.debug("Scenario '{}' on hub {} holds but is cooling down",
+                        scenarios.scenarios().get(scenario).name(), hubId);
+            }
+        }
+        return fired;
+    }
+
+    private boolean elapsed(int scenario, long now, long period) {
+        return firedAt[scenario] == NEVER || now - firedAt[scenario] >= period;
+    }
+
+    private void reevaluate(String sensorId, SensorStateAvro state, BitSet touched) {
+        for (ConditionSlot slot : scenarios.bySensor().get(sensorId)) {
+            boolean result = state != null && slot.condition().predicate().test(state.getData());
+
+            evaluationLog.debug("Scenario '{}', hub {}, sensor {}: {} -> {}",
+                    scenarios.scenarios().get(slot.scenario()).name(), hubId, sensorId,
+                    slot.condition().predicate(), result);
+
+            if (result != truth[slot.slot()]) {
+                truth[slot.slot()] = result;
+                satisfied[slot.scenario()] += result ? 1 : -1;
+            }
+            touched.set(slot.scenario());
+        }
+    }
+}
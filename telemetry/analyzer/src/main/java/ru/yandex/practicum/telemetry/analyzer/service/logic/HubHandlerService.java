@@ -4,6 +4,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.kafka.telemetry.event.*;
 import ru.yandex.practicum.telemetry.analyzer.persistence.model.Action;
 import ru.yandex.practicum.telemetry.analyzer.persistence.model.Condition;
@@ -26,6 +28,7 @@ public class HubHandlerService {
     private final ConditionRepo conditionRepo;
     private final ActionRepo actionRepo;
     private final ScenarioRepo scenarioRepo;
+    private final ScenarioIndex scenarioIndex;
 
     @Transactional
     public void handleRecord(HubEventAvro record) {
@@ -111,7 +114,8 @@ public class HubHandlerService {
         scenario.setConditions(scenarioConditions);
         scenario.setActions(scenarioActions);
 
-        scenarioRepo.save(scenario);
+        Scenario saved = scenarioRepo.save(scenario);
+        runAfterCommit(() -> scenarioIndex.put(saved));
 
         log.info("Saved scenario '{}' for hub {} ({} conditions, {} actions)",
                 scenario.getName(), hubId, scenarioConditions.size(), scenarioActions.size());
@@ -122,7 +126,21 @@ public class HubHandlerService {
         scenarioRepo.findByHubIdAndName(hubId, event.getName())
                 .ifPresent(scenario -> {
                     scenarioRepo.delete(scenario);
+                    runAfterCommit(() -> scenarioIndex.remove(hubId, event.getName()));
                     log.info("Removed scenario '{}' for hub {}", event.getName(), hubId);
                 });
     }
+
+    private static void runAfterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 }
@@ -0,0 +1,86 @@
+package ru.yandex.practicum.telemetry.analyzer.service.logic;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.telemetry.analyzer.config.AnalyzerProperties;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-hub sensor state rebuilt from snapshot deltas. Until the first full delta of a hub arrives
+ * the state holds only the sensors seen so far, so conditions on the missing ones evaluate to false.
+ * <p>
+ * The state of a hub is dropped when its partition is revoked, since deltas applied by another consumer
+ * in the meantime are never seen here, and when the hub sends no deltas for {@code analyzer.snapshots.hub-ttl}.
+ * Only used from the delta consumer thread.
+ */
+@Slf4j
+@Component
+public class HubStateMaterializer {
+
+    // access order: hubs idle the longest come first
+    private final Map<String, HubState> hubs = new LinkedHashMap<>(16, 0.75f, true);
+    private final long hubTtlNanos;
+
+    public HubStateMaterializer(AnalyzerProperties properties) {
+        this.hubTtlNanos = properties.getSnapshots().getHubTtl().toNanos();
+    }
+
+    public SensorsSnapshotAvro apply(int partition, SensorsSnapshotDeltaAvro delta) {
+        long now = System.nanoTime();
+        evictIdle(now);
+
+        String hubId = delta.getHubId();
+        HubState hub = hubs.computeIfAbsent(hubId, id -> new HubState(partition));
+        hub.lastSeen = now;
+        Map<String, SensorStateAvro> sensors = hub.sensors;
+
+        if (delta.getFull()) {
+            sensors.clear();
+        }
+        for (String sensorId : delta.getRemovedSensors()) {
+            sensors.remove(sensorId);
+        }
+        sensors.putAll(delta.getChangedSensors());
+
+        log.debug("Applied delta for hub {}: full={}, changed={}, removed={}, sensors={}",
+                hubId, delta.getFull(), delta.getChangedSensors().size(), delta.getRemovedSensors().size(),
+                sensors.size());
+
+        return new SensorsSnapshotAvro(hubId, delta.getTimestamp(), sensors);
+    }
+
+    public void revoke(Collection<Integer> partitions) {
+        int before = hubs.size();
+        hubs.values().removeIf(hub -> partitions.contains(hub.partition));
+        log.info("Partitions {} revoked, hub states dropped: {}", partitions, before - hubs.size());
+    }
+
+    private void evictIdle(long now) {
+        Iterator<HubState> iterator = hubs.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastSeen < hubTtlNanos) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    private static final class HubState {
+
+        private final int partition;
+        private final Map<String, SensorStateAvro> sensors = new HashMap<>();
+        private long lastSeen;
+
+        private HubState(int partition) {
+            this.partition = partition;
+        }
+    }
+}
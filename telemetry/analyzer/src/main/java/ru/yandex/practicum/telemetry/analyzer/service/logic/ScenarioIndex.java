@@ -0,0 +1,135 @@
+package ru.yandex.practicum.telemetry.analyzer.service.logic;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.ActionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.telemetry.analyzer.persistence.model.Action;
+import ru.yandex.practicum.telemetry.analyzer.persistence.model.Condition;
+import ru.yandex.practicum.telemetry.analyzer.persistence.model.Scenario;
+import ru.yandex.practicum.telemetry.analyzer.persistence.repo.ScenarioRepo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the scenarios of every hub, so snapshot evaluation never queries the database.
+ * Loaded once at startup and kept in sync by {@link HubHandlerService} after each committed change.
+ * The hub event thread replaces a hub's {@link HubScenarios} as a whole; the snapshot thread only reads it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ScenarioIndex {
+
+    private final ScenarioRepo scenarioRepo;
+
+    private final Map<String, HubScenarios> hubs = new ConcurrentHashMap<>();
+
+    public void load() {
+        hubs.clear();
+        List<Scenario> scenarios = scenarioRepo.findAll();
+        for (Scenario scenario : scenarios) {
+            put(scenario);
+        }
+        log.info("Scenario index loaded: {} scenarios for {} hubs", scenarios.size(), hubs.size());
+    }
+
+    public HubScenarios scenarios(String hubId) {
+        return hubs.getOrDefault(hubId, HubScenarios.EMPTY);
+    }
+
+    public void put(Scenario scenario) {
+        IndexedScenario indexed = IndexedScenario.of(scenario);
+        hubs.compute(scenario.getHubId(), (hubId, current) -> {
+            List<IndexedScenario> updated = new ArrayList<>(current == null ? List.of() : current.scenarios());
+            updated.removeIf(existing -> existing.name().equals(indexed.name()));
+            updated.add(indexed);
+            return HubScenarios.of(updated);
+        });
+    }
+
+    public void remove(String hubId, String name) {
+        hubs.computeIfPresent(hubId, (id, current) -> {
+            List<IndexedScenario> updated = current.scenarios().stream()
+                    .filter(existing -> !existing.name().equals(name))
+                    .toList();
+            return updated.isEmpty() ? null : HubScenarios.of(updated);
+        });
+    }
+
+    /**
+     * Scenarios of one hub with every condition numbered by a slot and indexed by the sensor it reads,
+     * so a snapshot re-evaluates only the conditions of changed sensors.
+     */
+    public record HubScenarios(List<IndexedScenario> scenarios,
+                               Map<String, List<ConditionSlot>> bySensor,
+                               int[] conditionCounts,
+                               int slotCount) {
+
+        static final HubScenarios EMPTY = of(List.of());
+
+        static HubScenarios of(List<IndexedScenario> scenarios) {
+            Map<String, List<ConditionSlot>> bySensor = new HashMap<>();
+            int[] conditionCounts = new int[scenarios.size()];
+            int slot = 0;
+            for (int scenario = 0; scenario < scenarios.size(); scenario++) {
+                for (Map.Entry<String, IndexedCondition> entry : scenarios.get(scenario).conditions().entrySet()) {
+                    bySensor.computeIfAbsent(entry.getKey(), sensorId -> new ArrayList<>())
+                            .add(new ConditionSlot(scenario, slot++, entry.getValue()));
+                    conditionCounts[scenario]++;
+                }
+            }
+            bySensor.replaceAll((sensorId, slots) -> List.copyOf(slots));
+            return new HubScenarios(List.copyOf(scenarios), Map.copyOf(bySensor), conditionCounts, slot);
+        }
+
+        public boolean isEmpty() {
+            return scenarios.isEmpty();
+        }
+    }
+
+    public record ConditionSlot(int scenario, int slot, IndexedCondition condition) {
+    }
+
+    public record IndexedScenario(String name,
+                                  Map<String, IndexedCondition> conditions,
+                                  Map<String, IndexedAction> actions) {
+
+        static IndexedScenario of(Scenario scenario) {
+            Map<String, IndexedCondition> conditions = new HashMap<>();
+            scenario.getConditions().forEach((sensorId, condition) ->
+                    conditions.put(sensorId, IndexedCondition.of(condition)));
+
+            Map<String, IndexedAction> actions = new HashMap<>();
+            scenario.getActions().forEach((sensorId, action) ->
+                    actions.put(sensorId, IndexedAction.of(action)));
+
+            return new IndexedScenario(scenario.getName(), Map.copyOf(conditions), Map.copyOf(actions));
+        }
+    }
+
+    public record IndexedCondition(ConditionTypeAvro type,
+                                   ConditionOperationAvro operation,
+                                   int value,
+                                   SensorPredicate predicate) {
+
+        static IndexedCondition of(Condition condition) {
+            int value = condition.getValue() != null ? condition.getValue() : 0;
+            return new IndexedCondition(condition.getType(), condition.getOperation(), value,
+                    SensorPredicate.compile(condition.getType(), condition.getOperation(), value));
+        }
+    }
+
+    public record IndexedAction(ActionTypeAvro type, Integer value) {
+
+        static IndexedAction of(Action action) {
+            return new IndexedAction(action.getType(), action.getValue());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ru.yandex.practicum.telemetry.analyzer.service.logic;
+
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+/**
+ * Scenario condition compiled when scenarios are indexed, e.g. "co2Level > 800": the sensor field and
+ * the operation are resolved to int codes once, and switch and motion conditions become "state == 0/1".
+ * Evaluation is then one type check, one field read and one comparison, with no enum lookups.
+ * <p>
+ * A single final class keeps the call site monomorphic; with a lambda per field and operation it turns
+ * megamorphic on mixed scenarios. SensorPredicateBenchmark compares the three variants.
+ */
+public final class SensorPredicate {
+
+    private static final int SWITCH = 0;
+    private static final int MOTION = 1;
+    private static final int LUMINOSITY = 2;
+    private static final int TEMPERATURE = 3;
+    private static final int CO2_LEVEL = 4;
+    private static final int HUMIDITY = 5;
+
+    private static final int EQUALS = 0;
+    private static final int GREATER_THAN = 1;
+    private static final int LOWER_THAN = 2;
+
+    private final int field;
+    private final int operation;
+    private final int value;
+
+    private SensorPredicate(int field, int operation, int value) {
+        this.field = field;
+        this.operation = operation;
+        this.value = value;
+    }
+
+    public static SensorPredicate compile(ConditionTypeAvro type, ConditionOperationAvro operation, int value) {
+        return switch (type) {
+            case SWITCH -> new SensorPredicate(SWITCH, EQUALS, value == 1 ? 1 : 0);
+            case MOTION -> new SensorPredicate(MOTION, EQUALS, value == 1 ? 1 : 0);
+            case LUMINOSITY -> new SensorPredicate(LUMINOSITY, operation(operation), value);
+            case TEMPERATURE -> new SensorPredicate(TEMPERATURE, operation(operation), value);
+            case CO2_LEVEL -> new SensorPredicate(CO2_LEVEL, operation(operation), value);
+            case HUMIDITY -> new SensorPredicate(HUMIDITY, operation(operation), value);
+        };
+    }
+
+    public boolean test(Object data) {
+        int actual;
+        switch (field) {
+            case SWITCH:
+                if (!(data instanceof SwitchSensorAvro sensor)) {
+                    return false;
+                }
+                actual = sensor.getState() ? 1 : 0;
+                break;
+            case MOTION:
+                if (!(data instanceof MotionSensorAvro sensor)) {
+                    return false;
+                }
+                actual = sensor.getMotion() ? 1 : 0;
+                break;
+            case LUMINOSITY:
+                if (!(data instanceof LightSensorAvro sensor)) {
+                    return false;
+                }
+                actual = sensor.getLuminosity();
+                break;
+            case TEMPERATURE:
+                if (data instanceof TemperatureSensorAvro sensor) {
+                    actual = sensor.getTemperatureC();
+                } else if (data instanceof ClimateSensorAvro sensor) {
+                    actual = sensor.getTemperatureC();
+                } else {
+                    return false;
+                }
+                break;
+            case CO2_LEVEL:
+                if (!(data instanceof ClimateSensorAvro sensor)) {
+                    return false;
+                }
+                actual = sensor.getCo2Level();
+                break;
+            default:
+                if (!(data instanceof ClimateSensorAvro sensor)) {
+                    return false;
+                }
+                actual = sensor.getHumidity();
+                break;
+        }
+
+        return switch (operation) {
+            case EQUALS -> actual == value;
+            case GREATER_THAN -> actual > value;
+            default -> actual < value;
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof SensorPredicate other
+                && field == other.field && operation == other.operation && value == other.value;
+    }
+
+    @Override
+    public int hashCode() {
+        return (field * 31 + operation) * 31 + value;
+    }
+
+    @Override
+    public String toString() {
+        String name = switch (field) {
+            case SWITCH -> "switch.state";
+            case MOTION -> "motion.motion";
+            case LUMINOSITY -> "light.luminosity";
+            case TEMPERATURE -> "temperatureC";
+            case CO2_LEVEL -> "climate.co2Level";
+            default -> "climate.humidity";
+        };
+        String sign = switch (operation) {
+            case EQUALS -> "==";
+            case GREATER_THAN -> ">";
+            default -> "<";
+        };
+        return name + " " + sign + " " + value;
+    }
+
+    private static int operation(ConditionOperationAvro operation) {
+        return switch (operation) {
+            case EQUALS -> EQUALS;
+            case GREATER_THAN -> GREATER_THAN;
+            case LOWER_THAN -> LOWER_THAN;
+        };
+    }
+}
@@ -1,185 +1,91 @@
 package ru.yandex.practicum.telemetry.analyzer.service.logic;
 
 import com.google.protobuf.Timestamp;
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import net.devh.boot.grpc.client.inject.GrpcClient;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.grpc.telemetry.event.ActionTypeProto;
 import ru.yandex.practicum.grpc.telemetry.event.DeviceActionProto;
 import ru.yandex.practicum.grpc.telemetry.event.DeviceActionRequest;
-import ru.yandex.practicum.grpc.telemetry.hubrouter.HubRouterControllerGrpc;
 import ru.yandex.practicum.kafka.telemetry.event.*;
-import ru.yandex.practicum.telemetry.analyzer.persistence.model.Action;
-import ru.yandex.practicum.telemetry.analyzer.persistence.model.Condition;
-import ru.yandex.practicum.telemetry.analyzer.persistence.model.Scenario;
-import ru.yandex.practicum.telemetry.analyzer.persistence.repo.ScenarioRepo;
+import ru.yandex.practicum.telemetry.analyzer.config.AnalyzerProperties;
+import ru.yandex.practicum.telemetry.analyzer.service.logic.ScenarioIndex.HubScenarios;
+import ru.yandex.practicum.telemetry.analyzer.service.logic.ScenarioIndex.IndexedAction;
+import ru.yandex.practicum.telemetry.analyzer.service.logic.ScenarioIndex.IndexedScenario;
+import ru.yandex.practicum.telemetry.logging.LogSampling;
+import ru.yandex.practicum.telemetry.logging.SampledLogger;
 
 import java.time.Instant;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class SnapshotHandleService {
 
-    private final ScenarioRepo scenarioRepo;
-
-    @GrpcClient("hub-router")
-    private HubRouterControllerGrpc.HubRouterControllerBlockingStub hubRouterClient;
-
-    private ManagedChannel fallbackChannel;
-    private HubRouterControllerGrpc.HubRouterControllerBlockingStub fallbackStub;
-
-    private HubRouterControllerGrpc.HubRouterControllerBlockingStub getHubRouterClient() {
-        if (hubRouterClient != null) {
-            return hubRouterClient;
-        }
-
-        if (fallbackStub == null) {
-            synchronized (this) {
-                if (fallbackStub == null) {
-                    fallbackChannel = ManagedChannelBuilder
-                            .forAddress("localhost", 59090)
-                            .usePlaintext()
-                            .build();
-                    fallbackStub = HubRouterControllerGrpc.newBlockingStub(fallbackChannel);
-                    log.info("Created fallback Hub Router gRPC client on localhost:59090");
-                }
-            }
-        }
-
-        return fallbackStub;
+    private static final SampledLogger actionLog = LogSampling.getLogger(SnapshotHandleService.class, "device-actions");
+
+    private final ScenarioIndex scenarioIndex;
+    private final DeviceActionDispatcher dispatcher;
+    private final AnalyzerProperties.Scenarios activation;
+    private final Timer evaluationTimer;
+
+    // evaluation state per hub; snapshots are handled by a single consumer thread
+    private final Map<String, HubEvaluation> evaluations = new HashMap<>();
+
+    public SnapshotHandleService(ScenarioIndex scenarioIndex,
+                                 DeviceActionDispatcher dispatcher,
+                                 AnalyzerProperties properties,
+                                 MeterRegistry registry) {
+        this.scenarioIndex = scenarioIndex;
+        this.dispatcher = dispatcher;
+        this.activation = properties.getScenarios();
+        this.evaluationTimer = Timer.builder("analyzer.snapshot.evaluation")
+                .description("Scenario evaluation time per snapshot, including sent actions")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
     }
 
     public void handleRecord(SensorsSnapshotAvro snapshot) {
+        evaluationTimer.record(() -> evaluate(snapshot));
+    }
+
+    private void evaluate(SensorsSnapshotAvro snapshot) {
         try {
             String hubId = snapshot.getHubId();
             Map<String, SensorStateAvro> sensorsState = snapshot.getSensorsState();
 
-            if (sensorsState == null || sensorsState.isEmpty()) {
-                log.debug("Snapshot for hub {} has empty sensors state, nothing to do", hubId);
-                return;
-            }
-
-            List<Scenario> scenarios = scenarioRepo.findByHubId(hubId);
+            HubScenarios scenarios = scenarioIndex.scenarios(hubId);
             if (scenarios.isEmpty()) {
+                evaluations.remove(hubId);
                 log.debug("No scenarios found for hub {}, nothing to do", hubId);
                 return;
             }
 
-            for (Scenario scenario : scenarios) {
-                Map<String, Condition> conditions = scenario.getConditions();
-                if (conditions == null || conditions.isEmpty()) {
-                    continue;
-                }
-
-                boolean allConditionsTrue = conditions.entrySet().stream()
-                        .allMatch(entry -> {
-                            String sensorId = entry.getKey();
-                            Condition condition = entry.getValue();
-                            SensorStateAvro state = sensorsState.get(sensorId);
-                            boolean result = isConditionSatisfied(condition, state);
-
-                            log.debug("Scenario '{}', hub {}, sensor {}: type={}, op={}, value={} -> {}",
-                                    scenario.getName(), hubId, sensorId,
-                                    condition.getType(), condition.getOperation(), condition.getValue(),
-                                    result);
-
-                            return result;
-                        });
-
-                if (allConditionsTrue) {
-                    log.info("All conditions satisfied for scenario '{}' on hub {}, executing actions",
-                            scenario.getName(), hubId);
-                    executeActions(hubId, scenario.getName(), scenario.getActions());
-                }
+            HubEvaluation evaluation = evaluations.get(hubId);
+            if (evaluation == null || evaluation.scenarios() != scenarios) {
+                evaluation = new HubEvaluation(hubId, scenarios,
+                        activation.getCooldown(), activation.getRearm(), evaluation);
+                evaluations.put(hubId, evaluation);
+            }
+
+            for (IndexedScenario scenario : evaluation.apply(sensorsState, snapshot.getTimestamp())) {
+                actionLog.info("All conditions satisfied for scenario '{}' on hub {}, executing actions",
+                        scenario.name(), hubId);
+                executeActions(hubId, scenario.name(), scenario.actions());
             }
         } catch (Exception e) {
             log.error("Error while handling snapshot", e);
         }
     }
 
-    private boolean isConditionSatisfied(Condition condition, SensorStateAvro state) {
-        if (state == null || state.getData() == null) {
-            return false;
-        }
-
-        Object data = state.getData();
-        ConditionTypeAvro type = condition.getType();
-        ConditionOperationAvro operation = condition.getOperation();
-        int expected = condition.getValue() != null ? condition.getValue() : 0;
-
-        return switch (type) {
-            case SWITCH -> {
-                if (!(data instanceof SwitchSensorAvro sensor)) {
-                    yield false;
-                }
-                boolean expectedOn = expected == 1;
-                yield sensor.getState() == expectedOn;
-            }
-            case MOTION -> {
-                if (!(data instanceof MotionSensorAvro sensor)) {
-                    yield false;
-                }
-                boolean expectedMotion = expected == 1;
-                yield sensor.getMotion() == expectedMotion;
-            }
-            case LUMINOSITY -> {
-                if (!(data instanceof LightSensorAvro sensor)) {
-                    yield false;
-                }
-                yield compareNumeric(operation, expected, sensor.getLuminosity());
-            }
-            case TEMPERATURE -> {
-                int actualTemperature;
-                if (data instanceof TemperatureSensorAvro t) {
-                    actualTemperature = t.getTemperatureC();
-                } else if (data instanceof ClimateSensorAvro c) {
-                    actualTemperature = c.getTemperatureC();
-                } else {
-                    yield false;
-                }
-                yield compareNumeric(operation, expected, actualTemperature);
-            }
-            case CO2_LEVEL -> {
-                if (!(data instanceof ClimateSensorAvro c)) {
-                    yield false;
-                }
-                yield compareNumeric(operation, expected, c.getCo2Level());
-            }
-            case HUMIDITY -> {
-                if (!(data instanceof ClimateSensorAvro c)) {
-                    yield false;
-                }
-                yield compareNumeric(operation, expected, c.getHumidity());
-            }
-        };
-    }
-
-    private boolean compareNumeric(ConditionOperationAvro operation, int expected, int actual) {
-        return switch (operation) {
-            case EQUALS -> actual == expected;
-            case GREATER_THAN -> actual > expected;
-            case LOWER_THAN -> actual < expected;
-        };
-    }
-
-    private void executeActions(String hubId, String scenarioName, Map<String, Action> actions) {
+    private void executeActions(String hubId, String scenarioName, Map<String, IndexedAction> actions) {
         if (actions == null || actions.isEmpty()) {
             log.debug("Scenario '{}' on hub {} has no actions", scenarioName, hubId);
             return;
         }
 
-        HubRouterControllerGrpc.HubRouterControllerBlockingStub client = getHubRouterClient();
-        if (client == null) {
-            log.error("HubRouter gRPC client is not available, cannot send commands");
-            return;
-        }
-
         Instant now = Instant.now();
         Timestamp timestamp = Timestamp.newBuilder()
                 .setSeconds(now.getEpochSecond())
@@ -187,30 +93,22 @@ public class SnapshotHandleService {
                 .build();
 
         actions.forEach((sensorId, action) -> {
-            try {
-                DeviceActionProto.Builder actionBuilder = DeviceActionProto.newBuilder()
-                        .setSensorId(sensorId)
-                        .setType(ActionTypeProto.valueOf(action.getType().name()));
-
-                if (action.getType() == ActionTypeAvro.SET_VALUE && action.getValue() != null) {
-                    actionBuilder.setValue(action.getValue());
-                }
-
-                DeviceActionRequest request = DeviceActionRequest.newBuilder()
-                        .setHubId(hubId)
-                        .setScenarioName(scenarioName)
-                        .setAction(actionBuilder.build())
-                        .setTimestamp(timestamp)
-                        .build();
-
-                client.handleDeviceAction(request);
-
-                log.info("Sent DeviceAction to Hub Router: hubId={}, scenario='{}', sensorId={}, type={}, value={}",
-                        hubId, scenarioName, sensorId, action.getType(), action.getValue());
-            } catch (Exception e) {
-                log.error("Failed to send action for sensor {} in scenario '{}' on hub {}",
-                        sensorId, scenarioName, hubId, e);
+            DeviceActionProto.Builder actionBuilder = DeviceActionProto.newBuilder()
+                    .setSensorId(sensorId)
+                    .setType(ActionTypeProto.valueOf(action.type().name()));
+
+            if (action.type() == ActionTypeAvro.SET_VALUE && action.value() != null) {
+                actionBuilder.setValue(action.value());
             }
+
+            DeviceActionRequest request = DeviceActionRequest.newBuilder()
+                    .setHubId(hubId)
+                    .setScenarioName(scenarioName)
+                    .setAction(actionBuilder.build())
+                    .setTimestamp(timestamp)
+                    .build();
+
+            dispatcher.dispatch(request);
         });
     }
 }
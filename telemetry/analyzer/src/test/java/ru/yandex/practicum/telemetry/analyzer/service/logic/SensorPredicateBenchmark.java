@@ -0,0 +1,210 @@
+package ru.yandex.practicum.telemetry.analyzer.service.logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Conditions of 10k scenarios (3 per scenario, all types and operations) evaluated against payloads of all sensor
+ * types, reported per condition:
+ * <ul>
+ *     <li>{@code interpreter} - the per-snapshot switch over condition type and operation that
+ *     {@link SensorPredicate} replaced;</li>
+ *     <li>{@code compiled} - {@link SensorPredicate};</li>
+ *     <li>{@code lambdas} - one lambda per field and operation, the alternative rejected for its megamorphic
+ *     call site.</li>
+ * </ul>
+ * {@code conditions=300} keeps the working set in cache, {@code conditions=30000} is the full 10k scenarios.
+ * <pre>
+ * mvn -Pjmh test -pl telemetry/analyzer -am -Djmh.args="analyzer.service.logic.SensorPredicateBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorPredicateBenchmark {
+
+    private static final int SCENARIOS = 10_000;
+    private static final int CONDITIONS_PER_SCENARIO = 3;
+    private static final int ALL = SCENARIOS * CONDITIONS_PER_SCENARIO;
+
+    @Param({"300", "30000"})
+    private int conditions;
+
+    private ConditionTypeAvro[] types;
+    private ConditionOperationAvro[] operations;
+    private int[] values;
+    private SensorPredicate[] compiled;
+    private Predicate<Object>[] lambdas;
+    private Object[] payloads;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        Random random = new Random(42);
+        types = new ConditionTypeAvro[ALL];
+        operations = new ConditionOperationAvro[ALL];
+        values = new int[ALL];
+        compiled = new SensorPredicate[ALL];
+        lambdas = new Predicate[ALL];
+        payloads = new Object[ALL];
+        for (int i = 0; i < ALL; i++) {
+            types[i] = ConditionTypeAvro.values()[random.nextInt(ConditionTypeAvro.values().length)];
+            operations[i] = ConditionOperationAvro.values()[random.nextInt(ConditionOperationAvro.values().length)];
+            values[i] = switch (types[i]) {
+                case SWITCH, MOTION -> random.nextInt(2);
+                case CO2_LEVEL -> 400 + random.nextInt(1000);
+                default -> random.nextInt(100);
+            };
+            compiled[i] = SensorPredicate.compile(types[i], operations[i], values[i]);
+            lambdas[i] = lambda(types[i], operations[i], values[i]);
+            payloads[i] = payload(random);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ALL)
+    public int interpreter() {
+        int satisfied = 0;
+        for (int i = 0; i < ALL; i++) {
+            int c = i % conditions;
+            if (interpret(types[c], operations[c], values[c], payloads[i])) {
+                satisfied++;
+            }
+        }
+        return satisfied;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ALL)
+    public int compiled() {
+        int satisfied = 0;
+        for (int i = 0; i < ALL; i++) {
+            if (compiled[i % conditions].test(payloads[i])) {
+                satisfied++;
+            }
+        }
+        return satisfied;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ALL)
+    public int lambdas() {
+        int satisfied = 0;
+        for (int i = 0; i < ALL; i++) {
+            if (lambdas[i % conditions].test(payloads[i])) {
+                satisfied++;
+            }
+        }
+        return satisfied;
+    }
+
+    private static Object payload(Random random) {
+        return switch (random.nextInt(5)) {
+            case 0 -> SwitchSensorAvro.newBuilder().setState(random.nextBoolean()).build();
+            case 1 -> MotionSensorAvro.newBuilder()
+                    .setLinkQuality(random.nextInt(100))
+                    .setMotion(random.nextBoolean())
+                    .setVoltage(random.nextInt(240))
+                    .build();
+            case 2 -> LightSensorAvro.newBuilder()
+                    .setLinkQuality(random.nextInt(100))
+                    .setLuminosity(random.nextInt(100))
+                    .build();
+            case 3 -> TemperatureSensorAvro.newBuilder()
+                    .setId("sensor")
+                    .setHubId("hub")
+                    .setTimestamp(Instant.EPOCH)
+                    .setTemperatureC(random.nextInt(100))
+                    .setTemperatureF(random.nextInt(212))
+                    .build();
+            default -> ClimateSensorAvro.newBuilder()
+                    .setTemperatureC(random.nextInt(100))
+                    .setHumidity(random.nextInt(100))
+                    .setCo2Level(400 + random.nextInt(1000))
+                    .build();
+        };
+    }
+
+    private static boolean interpret(ConditionTypeAvro type, ConditionOperationAvro operation, int expected,
+                                     Object data) {
+        return switch (type) {
+            case SWITCH -> data instanceof SwitchSensorAvro sensor && sensor.getState() == (expected == 1);
+            case MOTION -> data instanceof MotionSensorAvro sensor && sensor.getMotion() == (expected == 1);
+            case LUMINOSITY -> data instanceof LightSensorAvro sensor
+                    && compare(operation, expected, sensor.getLuminosity());
+            case TEMPERATURE -> {
+                if (data instanceof TemperatureSensorAvro sensor) {
+                    yield compare(operation, expected, sensor.getTemperatureC());
+                }
+                yield data instanceof ClimateSensorAvro sensor && compare(operation, expected, sensor.getTemperatureC());
+            }
+            case CO2_LEVEL -> data instanceof ClimateSensorAvro sensor
+                    && compare(operation, expected, sensor.getCo2Level());
+            case HUMIDITY -> data instanceof ClimateSensorAvro sensor
+                    && compare(operation, expected, sensor.getHumidity());
+        };
+    }
+
+    private static boolean compare(ConditionOperationAvro operation, int expected, int actual) {
+        return switch (operation) {
+            case EQUALS -> actual == expected;
+            case GREATER_THAN -> actual > expected;
+            case LOWER_THAN -> actual < expected;
+        };
+    }
+
+    private static Predicate<Object> lambda(ConditionTypeAvro type, ConditionOperationAvro operation, int value) {
+        return switch (type) {
+            case SWITCH -> data -> data instanceof SwitchSensorAvro sensor && sensor.getState() == (value == 1);
+            case MOTION -> data -> data instanceof MotionSensorAvro sensor && sensor.getMotion() == (value == 1);
+            case LUMINOSITY -> field(LightSensorAvro.class, LightSensorAvro::getLuminosity, test(operation, value));
+            case TEMPERATURE -> {
+                IntPredicate test = test(operation, value);
+                yield data -> data instanceof TemperatureSensorAvro temperature
+                        ? test.test(temperature.getTemperatureC())
+                        : data instanceof ClimateSensorAvro climate && test.test(climate.getTemperatureC());
+            }
+            case CO2_LEVEL -> field(ClimateSensorAvro.class, ClimateSensorAvro::getCo2Level, test(operation, value));
+            case HUMIDITY -> field(ClimateSensorAvro.class, ClimateSensorAvro::getHumidity, test(operation, value));
+        };
+    }
+
+    private static <T> Predicate<Object> field(Class<T> sensor, ToIntFunction<T> getter, IntPredicate test) {
+        return data -> sensor.isInstance(data) && test.test(getter.applyAsInt(sensor.cast(data)));
+    }
+
+    private static IntPredicate test(ConditionOperationAvro operation, int value) {
+        return switch (operation) {
+            case EQUALS -> actual -> actual == value;
+            case GREATER_THAN -> actual -> actual > value;
+            case LOWER_THAN -> actual -> actual < value;
+        };
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.telemetry.collector.config;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Unsynchronized growable buffer with a direct Avro encoder bound to it, reused per thread.
+ * Callers must {@link #release()} it once the encoded bytes have been copied out.
+ */
+public final class AvroEncodingBuffer extends OutputStream {
+
+    private static final EncoderFactory ENCODER_FACTORY = EncoderFactory.get();
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    // Oversized buffers are not kept per thread so that one rare large message does not pin memory
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<AvroEncodingBuffer> BUFFERS = ThreadLocal.withInitial(AvroEncodingBuffer::new);
+
+    private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+    private int count;
+    private BinaryEncoder encoder;
+
+    private AvroEncodingBuffer() {
+    }
+
+    public static AvroEncodingBuffer acquire() {
+        return BUFFERS.get();
+    }
+
+    public BinaryEncoder encoder() {
+        encoder = ENCODER_FACTORY.directBinaryEncoder(this, encoder);
+        return encoder;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void writeTo(ByteBuffer target) {
+        target.put(buf, 0, count);
+    }
+
+    public void release() {
+        count = 0;
+        if (buf.length > MAX_RETAINED_BUFFER_SIZE) {
+            buf = new byte[INITIAL_BUFFER_SIZE];
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(capacity, buf.length << 1));
+        }
+    }
+}
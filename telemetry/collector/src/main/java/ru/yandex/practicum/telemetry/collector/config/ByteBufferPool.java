@@ -0,0 +1,34 @@
+package ru.yandex.practicum.telemetry.collector.config;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Bounded pool of equally sized heap buffers for encoded records.
+ * Larger requests get a one-off buffer that is not taken back on {@link #release(ByteBuffer)}.
+ */
+public final class ByteBufferPool {
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<ByteBuffer> free;
+
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    public ByteBuffer acquire(int size) {
+        if (size > bufferSize) {
+            return ByteBuffer.allocate(size);
+        }
+        ByteBuffer buffer = free.poll();
+        return buffer != null ? buffer : ByteBuffer.allocate(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize) {
+            buffer.clear();
+            free.offer(buffer);
+        }
+    }
+}
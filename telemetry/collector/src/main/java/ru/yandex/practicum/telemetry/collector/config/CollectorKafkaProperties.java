@@ -0,0 +1,89 @@
+package ru.yandex.practicum.telemetry.collector.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+@Getter
+@Setter
+@ConfigurationProperties("collector.kafka")
+public class CollectorKafkaProperties {
+
+    private String bootstrapServers = "localhost:9092";
+
+    private Producer producer = new Producer();
+
+    @Getter
+    @Setter
+    public static class Producer {
+
+        private Profile profile = Profile.DEFAULT;
+
+        // explicit settings take precedence over the profile preset
+        private Integer lingerMs;
+        private Integer batchSize;
+        private String compressionType;
+        private String acks;
+        private Boolean enableIdempotence;
+        private Integer maxInFlightRequestsPerConnection;
+
+        // any other producer setting, applied last
+        private Map<String, String> properties = new HashMap<>();
+    }
+
+    public enum Profile {
+        DEFAULT(Map.of()),
+
+        LOW_LATENCY(Map.of(
+                ProducerConfig.LINGER_MS_CONFIG, "0",
+                ProducerConfig.BATCH_SIZE_CONFIG, "16384",
+                ProducerConfig.COMPRESSION_TYPE_CONFIG, "none",
+                ProducerConfig.ACKS_CONFIG, "1",
+                ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "false",
+                ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, "5"
+        )),
+
+        HIGH_THROUGHPUT(Map.of(
+                ProducerConfig.LINGER_MS_CONFIG, "20",
+                ProducerConfig.BATCH_SIZE_CONFIG, "262144",
+                ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4",
+                ProducerConfig.ACKS_CONFIG, "all",
+                ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true",
+                ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, "5"
+        ));
+
+        private final Map<String, String> preset;
+
+        Profile(Map<String, String> preset) {
+            this.preset = preset;
+        }
+    }
+
+    public Properties buildProducerConfig() {
+        Properties config = new Properties();
+        config.putAll(producer.getProfile().preset);
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+
+        putIfSet(config, ProducerConfig.LINGER_MS_CONFIG, producer.getLingerMs());
+        putIfSet(config, ProducerConfig.BATCH_SIZE_CONFIG, producer.getBatchSize());
+        putIfSet(config, ProducerConfig.COMPRESSION_TYPE_CONFIG, producer.getCompressionType());
+        putIfSet(config, ProducerConfig.ACKS_CONFIG, producer.getAcks());
+        putIfSet(config, ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, producer.getEnableIdempotence());
+        putIfSet(config, ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION,
+                producer.getMaxInFlightRequestsPerConnection());
+
+        config.putAll(producer.getProperties());
+        return config;
+    }
+
+    private static void putIfSet(Properties config, String key, Object value) {
+        if (value != null) {
+            config.put(key, String.valueOf(value));
+        }
+    }
+}
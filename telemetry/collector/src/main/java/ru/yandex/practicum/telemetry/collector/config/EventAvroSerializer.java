@@ -1,19 +1,20 @@
 package ru.yandex.practicum.telemetry.collector.config;
 
-import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.Schema;
 import org.apache.avro.io.DatumWriter;
-import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.specific.SpecificDatumWriter;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Serializer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class EventAvroSerializer<T extends SpecificRecordBase> implements Serializer<T> {
 
-    private static final EncoderFactory ENCODER_FACTORY = EncoderFactory.get();
+    private final Map<Schema, DatumWriter<T>> writers = new ConcurrentHashMap<>();
 
     @Override
     public byte[] serialize(String topic, T data) {
@@ -21,18 +22,43 @@ public class EventAvroSerializer<T extends SpecificRecordBase> implements Serial
             return null;
         }
 
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            BinaryEncoder encoder = ENCODER_FACTORY.directBinaryEncoder(out, null);
-            DatumWriter<T> writer = new SpecificDatumWriter<>(data.getSchema());
+        AvroEncodingBuffer buffer = encode(topic, data);
+        try {
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Writes the record into a buffer taken from {@code pool}, flipped for reading.
+     * The caller hands the buffer back to the pool once it is consumed.
+     */
+    public ByteBuffer serialize(String topic, T data, ByteBufferPool pool) {
+        if (data == null) {
+            return null;
+        }
 
-            writer.write(data, encoder);
-            encoder.flush();
+        AvroEncodingBuffer buffer = encode(topic, data);
+        try {
+            ByteBuffer target = pool.acquire(buffer.size());
+            buffer.writeTo(target);
+            return target.flip();
+        } finally {
+            buffer.release();
+        }
+    }
 
-            return out.toByteArray();
-        }  catch (IOException | RuntimeException ex) {
-            String type = (data != null) ? data.getClass().getName() : "null";
+    private AvroEncodingBuffer encode(String topic, T data) {
+        AvroEncodingBuffer buffer = AvroEncodingBuffer.acquire();
+        try {
+            DatumWriter<T> writer = writers.computeIfAbsent(data.getSchema(), SpecificDatumWriter::new);
+            writer.write(data, buffer.encoder());
+            return buffer;
+        } catch (IOException | RuntimeException ex) {
+            buffer.release();
             throw new SerializationException(
-                    "Failed to serialize Avro message for topic [" + topic + "], type=[" + type + "]",
+                    "Failed to serialize Avro message for topic [" + topic + "], type=[" + data.getClass().getName() + "]",
                     ex
             );
         }
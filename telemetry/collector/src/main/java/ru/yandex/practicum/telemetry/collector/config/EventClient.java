@@ -1,11 +1,10 @@
 package ru.yandex.practicum.telemetry.collector.config;
 
-import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.producer.Producer;
 
 public interface EventClient {
 
-    Producer<String, SpecificRecordBase> getProducer();
+    Producer<String, byte[]> getProducer();
 
     void stop();
 
@@ -1,39 +1,42 @@
 package ru.yandex.practicum.telemetry.collector.config;
 
-import org.apache.avro.specific.SpecificRecordBase;
+import io.micrometer.core.instrument.binder.kafka.KafkaClientMetrics;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
-import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.util.Properties;
 
+@Slf4j
 @Configuration
 public class EventConfig {
 
-    @Value("${kafka.bootstrap-servers:localhost:9092}")
-    private String bootstrapServers;
-
     @Bean(destroyMethod = "close")
-    public Producer<String, SpecificRecordBase> kafkaProducer() {
-        Properties config = new Properties();
-        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+    public Producer<String, byte[]> kafkaProducer(CollectorKafkaProperties kafkaProperties) {
+        Properties config = kafkaProperties.buildProducerConfig();
+        log.info("Creating Kafka producer with profile {}: {}", kafkaProperties.getProducer().getProfile(), config);
 
         return new KafkaProducer<>(
                 config,
                 new StringSerializer(),
-                new EventAvroSerializer<>()
+                new ByteArraySerializer()
         );
     }
 
+    @Bean(destroyMethod = "close")
+    public KafkaClientMetrics kafkaProducerMetrics(Producer<String, byte[]> producer) {
+        return new KafkaClientMetrics(producer);
+    }
+
     @Bean
-    public EventClient eventClient(Producer<String, SpecificRecordBase> producer) {
+    public EventClient eventClient(Producer<String, byte[]> producer) {
         return new EventClient() {
             @Override
-            public Producer<String, SpecificRecordBase> getProducer() {
+            public Producer<String, byte[]> getProducer() {
                 return producer;
             }
 
@@ -43,4 +46,3 @@ public class EventConfig {
         };
     }
 }
-
@@ -5,12 +5,21 @@ import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
+import ru.yandex.practicum.grpc.telemetry.collector.CollectEventsAck;
+import ru.yandex.practicum.grpc.telemetry.collector.CollectStatusProto;
 import ru.yandex.practicum.grpc.telemetry.collector.CollectorControllerGrpc;
+import ru.yandex.practicum.grpc.telemetry.collector.SensorEventBatchRequest;
+import ru.yandex.practicum.grpc.telemetry.collector.SensorEventBatchResponse;
 import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
 import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
 import ru.yandex.practicum.telemetry.collector.service.handler.HubEventHandler;
 import ru.yandex.practicum.telemetry.collector.service.handler.SensorEventHandler;
+import ru.yandex.practicum.telemetry.logging.LogSampling;
+import ru.yandex.practicum.telemetry.logging.SampledLogger;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
@@ -20,11 +29,17 @@ import java.util.stream.Collectors;
 @GrpcService
 public class EventController extends CollectorControllerGrpc.CollectorControllerImplBase {
 
+    private static final SampledLogger requestLog = LogSampling.getLogger(EventController.class, "grpc-requests");
+    private static final SampledLogger rejectLog = LogSampling.getLogger(EventController.class, "grpc-rejects");
+
     private final Map<SensorEventProto.PayloadCase, SensorEventHandler> sensorEventHandlers;
     private final Map<HubEventProto.PayloadCase, HubEventHandler> hubEventHandlers;
+    private final KafkaEventProducer producer;
 
     public EventController(Set<SensorEventHandler> sensorEventHandlers,
-                           Set<HubEventHandler> hubEventHandlers) {
+                           Set<HubEventHandler> hubEventHandlers,
+                           KafkaEventProducer producer) {
+        this.producer = producer;
 
         this.sensorEventHandlers = sensorEventHandlers.stream()
                 .collect(Collectors.toUnmodifiableMap(
@@ -51,83 +66,145 @@ public class EventController extends CollectorControllerGrpc.CollectorController
 
     @Override
     public void collectSensorEvent(SensorEventProto request, StreamObserver<Empty> responseObserver) {
+        requestLog.info("gRPC collectSensorEvent, payloadCase={}", request.getPayloadCase());
+        complete(dispatchSensorEvent(request), responseObserver);
+    }
+
+    @Override
+    public void collectHubEvent(HubEventProto request, StreamObserver<Empty> responseObserver) {
+        requestLog.info("gRPC collectHubEvent, payloadCase={}", request.getPayloadCase());
+        complete(dispatchHubEvent(request), responseObserver);
+    }
+
+    @Override
+    public void collectSensorEventBatch(SensorEventBatchRequest request,
+                                        StreamObserver<SensorEventBatchResponse> responseObserver) {
+        requestLog.info("gRPC collectSensorEventBatch, size={}", request.getEventCount());
+
+        List<CollectStatusProto> statuses = new ArrayList<>(request.getEventCount());
+        List<KafkaEventProducer.EncodedEvent> records = new ArrayList<>(request.getEventCount());
+        List<Integer> recordPositions = new ArrayList<>(request.getEventCount());
+
+        for (SensorEventProto event : request.getEventList()) {
+            CollectStatusProto status = mapSensorEvent(event, records);
+            if (status == CollectStatusProto.ACCEPTED) {
+                recordPositions.add(statuses.size());
+            }
+            statuses.add(status);
+        }
+
+        try {
+            if (!records.isEmpty()) {
+                producer.sendSensorEventsToKafka(records);
+            }
+        } catch (Exception e) {
+            log.error("Failed to hand sensor event batch to Kafka, size={}", records.size(), e);
+            recordPositions.forEach(position -> statuses.set(position, CollectStatusProto.INTERNAL_ERROR));
+        }
+
+        responseObserver.onNext(SensorEventBatchResponse.newBuilder()
+                .addAllStatus(statuses)
+                .build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public StreamObserver<SensorEventProto> collectSensorEventStream(
+            StreamObserver<CollectEventsAck> responseObserver) {
+        log.info("gRPC collectSensorEventStream opened");
+        return new EventStreamObserver<>("sensor", responseObserver, this::dispatchSensorEvent);
+    }
+
+    @Override
+    public StreamObserver<HubEventProto> collectHubEventStream(
+            StreamObserver<CollectEventsAck> responseObserver) {
+        log.info("gRPC collectHubEventStream opened");
+        return new EventStreamObserver<>("hub", responseObserver, this::dispatchHubEvent);
+    }
+
+    private Status dispatchSensorEvent(SensorEventProto request) {
         SensorEventProto.PayloadCase payloadCase = request.getPayloadCase();
-        log.info("gRPC collectSensorEvent, payloadCase={}", payloadCase);
 
         if (payloadCase == SensorEventProto.PayloadCase.PAYLOAD_NOT_SET) {
-            log.warn("Sensor event payload is not set: request={}", request);
-            responseObserver.onError(
-                    Status.INVALID_ARGUMENT
-                            .withDescription("Sensor event payload must not be empty")
-                            .asRuntimeException()
-            );
-            return;
+            rejectLog.warn("Sensor event payload is not set: request={}", request);
+            return Status.INVALID_ARGUMENT.withDescription("Sensor event payload must not be empty");
         }
 
         SensorEventHandler handler = sensorEventHandlers.get(payloadCase);
         if (handler == null) {
             log.warn("No handler registered for sensor event payload type: {}", payloadCase);
-            responseObserver.onError(
-                    Status.INVALID_ARGUMENT
-                            .withDescription("No handler registered for sensor event payload type: " + payloadCase)
-                            .asRuntimeException()
-            );
-            return;
+            return Status.INVALID_ARGUMENT
+                    .withDescription("No handler registered for sensor event payload type: " + payloadCase);
         }
 
         try {
             handler.handle(request);
-            responseObserver.onNext(Empty.getDefaultInstance());
-            responseObserver.onCompleted();
+            return Status.OK;
         } catch (Exception e) {
             log.error("Failed to handle sensor event. payloadCase={}, request={}", payloadCase, request, e);
-            responseObserver.onError(
-                    Status.INTERNAL
-                            .withDescription("Internal error while processing sensor event")
-                            .withCause(e)
-                            .asRuntimeException()
-            );
+            return Status.INTERNAL
+                    .withDescription("Internal error while processing sensor event")
+                    .withCause(e);
         }
     }
 
-    @Override
-    public void collectHubEvent(HubEventProto request, StreamObserver<Empty> responseObserver) {
+    private CollectStatusProto mapSensorEvent(SensorEventProto event,
+                                              List<KafkaEventProducer.EncodedEvent> records) {
+        SensorEventProto.PayloadCase payloadCase = event.getPayloadCase();
+        if (payloadCase == SensorEventProto.PayloadCase.PAYLOAD_NOT_SET) {
+            return CollectStatusProto.INVALID_PAYLOAD;
+        }
+
+        SensorEventHandler handler = sensorEventHandlers.get(payloadCase);
+        if (handler == null) {
+            return CollectStatusProto.NO_HANDLER;
+        }
+
+        try {
+            byte[] record = handler.encode(event);
+            if (record == null) {
+                return CollectStatusProto.INVALID_PAYLOAD;
+            }
+            records.add(new KafkaEventProducer.EncodedEvent(event.getHubId(), record));
+            return CollectStatusProto.ACCEPTED;
+        } catch (Exception e) {
+            log.warn("Failed to map batched sensor event. payloadCase={}, id={}", payloadCase, event.getId(), e);
+            return CollectStatusProto.INVALID_PAYLOAD;
+        }
+    }
+
+    private Status dispatchHubEvent(HubEventProto request) {
         HubEventProto.PayloadCase payloadCase = request.getPayloadCase();
-        log.info("gRPC collectHubEvent, payloadCase={}", payloadCase);
 
         if (payloadCase == HubEventProto.PayloadCase.PAYLOAD_NOT_SET) {
-            log.warn("Hub event payload is not set: request={}", request);
-            responseObserver.onError(
-                    Status.INVALID_ARGUMENT
-                            .withDescription("Hub event payload must not be empty")
-                            .asRuntimeException()
-            );
-            return;
+            rejectLog.warn("Hub event payload is not set: request={}", request);
+            return Status.INVALID_ARGUMENT.withDescription("Hub event payload must not be empty");
         }
 
         HubEventHandler handler = hubEventHandlers.get(payloadCase);
         if (handler == null) {
             log.warn("No handler registered for hub event payload type: {}", payloadCase);
-            responseObserver.onError(
-                    Status.INVALID_ARGUMENT
-                            .withDescription("No handler registered for hub event payload type: " + payloadCase)
-                            .asRuntimeException()
-            );
-            return;
+            return Status.INVALID_ARGUMENT
+                    .withDescription("No handler registered for hub event payload type: " + payloadCase);
         }
 
         try {
             handler.handle(request);
-            responseObserver.onNext(Empty.getDefaultInstance());
-            responseObserver.onCompleted();
+            return Status.OK;
         } catch (Exception e) {
             log.error("Failed to handle hub event. payloadCase={}, request={}", payloadCase, request, e);
-            responseObserver.onError(
-                    Status.INTERNAL
-                            .withDescription("Internal error while processing hub event")
-                            .withCause(e)
-                            .asRuntimeException()
-            );
+            return Status.INTERNAL
+                    .withDescription("Internal error while processing hub event")
+                    .withCause(e);
+        }
+    }
+
+    private void complete(Status status, StreamObserver<Empty> responseObserver) {
+        if (status.isOk()) {
+            responseObserver.onNext(Empty.getDefaultInstance());
+            responseObserver.onCompleted();
+        } else {
+            responseObserver.onError(status.asRuntimeException());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.telemetry.collector.controller;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.grpc.telemetry.collector.CollectEventsAck;
+
+import java.util.function.Function;
+
+/**
+ * Receives events over one long-lived call and dispatches them one by one.
+ * <p>
+ * Inbound flow control is manual: the next message is requested only after the previous one
+ * has been handed to the Kafka producer. {@code KafkaProducer.send} blocks while its buffer is
+ * full, so producer backpressure propagates to the client through the HTTP/2 flow-control window.
+ * Acks carry cumulative totals, so an ack skipped while the outbound side is not ready is
+ * covered by the next one.
+ */
+@Slf4j
+class EventStreamObserver<T> implements StreamObserver<T> {
+
+    static final int ACK_BATCH_SIZE = 100;
+
+    private final String streamName;
+    private final ServerCallStreamObserver<CollectEventsAck> responseObserver;
+    private final Function<T, Status> dispatcher;
+
+    private long accepted;
+    private long rejected;
+    private int unacknowledged;
+
+    EventStreamObserver(String streamName,
+                        StreamObserver<CollectEventsAck> responseObserver,
+                        Function<T, Status> dispatcher) {
+        this.streamName = streamName;
+        this.responseObserver = (ServerCallStreamObserver<CollectEventsAck>) responseObserver;
+        this.dispatcher = dispatcher;
+
+        this.responseObserver.disableAutoRequest();
+        this.responseObserver.request(1);
+    }
+
+    @Override
+    public void onNext(T event) {
+        if (dispatcher.apply(event).isOk()) {
+            accepted++;
+        } else {
+            rejected++;
+        }
+
+        if (++unacknowledged >= ACK_BATCH_SIZE && responseObserver.isReady()) {
+            sendAck();
+        }
+        responseObserver.request(1);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        log.warn("gRPC {} event stream terminated by client: accepted={}, rejected={}",
+                streamName, accepted, rejected, t);
+    }
+
+    @Override
+    public void onCompleted() {
+        log.info("gRPC {} event stream completed: accepted={}, rejected={}", streamName, accepted, rejected);
+        sendAck();
+        responseObserver.onCompleted();
+    }
+
+    private void sendAck() {
+        responseObserver.onNext(CollectEventsAck.newBuilder()
+                .setAccepted(accepted)
+                .setRejected(rejected)
+                .build());
+        unacknowledged = 0;
+    }
+}
@@ -2,34 +2,60 @@ package ru.yandex.practicum.telemetry.collector.service;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.telemetry.collector.config.EventClient;
 import ru.yandex.practicum.telemetry.collector.config.EventTopic;
+import ru.yandex.practicum.telemetry.logging.LogSampling;
+import ru.yandex.practicum.telemetry.logging.SampledLogger;
+
+import java.util.List;
 
 @Slf4j
 @Service
 @AllArgsConstructor
 public class KafkaEventProducer {
+
+    private static final SampledLogger sendLog = LogSampling.getLogger(KafkaEventProducer.class, "kafka-sends");
+
     private final EventClient client;
 
-    public void sendHubEventToKafka(SpecificRecordBase message) {
-        sendEventToKafka(EventTopic.TELEMETRY_HUB_TOPIC, "HubEventAvro", message);
+    public record EncodedEvent(String hubId, byte[] payload) {
+    }
+
+    public void sendHubEventToKafka(String hubId, byte[] payload) {
+        sendEventToKafka(EventTopic.TELEMETRY_HUB_TOPIC, "HubEventAvro", hubId, payload);
     }
 
-    public void sendSensorEventToKafka(SpecificRecordBase message) {
-        sendEventToKafka(EventTopic.TELEMETRY_SENSOR_TOPIC, "SensorEventAvro", message);
+    public void sendSensorEventToKafka(String hubId, byte[] payload) {
+        sendEventToKafka(EventTopic.TELEMETRY_SENSOR_TOPIC, "SensorEventAvro", hubId, payload);
+    }
+
+    public void sendSensorEventsToKafka(List<EncodedEvent> events) {
+        String topic = EventTopic.TELEMETRY_SENSOR_TOPIC;
+        sendLog.info("--> Sending batch to Kafka (SensorEventAvro): topic={}, size={}", topic, events.size());
+
+        Callback callback = (metadata, exception) -> {
+            if (exception != null) {
+                log.error("Failed to send batched message to Kafka (SensorEventAvro), topic={}", topic, exception);
+            }
+        };
+        for (EncodedEvent event : events) {
+            client.getProducer().send(new ProducerRecord<>(topic, event.hubId(), event.payload()), callback);
+        }
     }
 
-    private void sendEventToKafka(String topic, String eventType, SpecificRecordBase message) {
-        ProducerRecord<String, SpecificRecordBase> record = new ProducerRecord<>(topic, message);
-        log.info("--> Sending message to Kafka ({}): topic={}, value={}", eventType, topic, message);
+    private void sendEventToKafka(String topic, String eventType, String hubId, byte[] payload) {
+        // keyed by hubId so every event of a hub lands on one partition and is consumed in order
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, hubId, payload);
+        sendLog.info("--> Sending message to Kafka ({}): topic={}, hubId={}, size={} bytes",
+                eventType, topic, hubId, payload.length);
         client.getProducer().send(record, (metadata, exception) -> {
             if (exception != null) {
                 log.error("Failed to send message to Kafka ({}), topic={}", eventType, topic, exception);
             } else {
-                log.debug("Message sent to Kafka successfully ({}): topic={}, partition={}, offset={}",
+                sendLog.debug("Message sent to Kafka successfully ({}): topic={}, partition={}, offset={}",
                         eventType, metadata.topic(), metadata.partition(), metadata.offset());
             }
         });
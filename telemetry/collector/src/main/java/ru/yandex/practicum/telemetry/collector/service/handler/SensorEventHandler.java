@@ -1,10 +1,15 @@
 package ru.yandex.practicum.telemetry.collector.service.handler;
 
 import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
 
 public interface SensorEventHandler {
 
     SensorEventProto.PayloadCase getMessageType();
 
+    SensorEventAvro mapToAvro(SensorEventProto event);
+
+    byte[] encode(SensorEventProto event);
+
     void handle(SensorEventProto event);
 }
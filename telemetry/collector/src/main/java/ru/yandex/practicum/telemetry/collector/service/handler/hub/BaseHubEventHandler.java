@@ -5,26 +5,43 @@ import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
 import ru.yandex.practicum.telemetry.collector.service.handler.HubEventHandler;
+import ru.yandex.practicum.telemetry.collector.service.transcoder.ProtoAvroTranscoder;
 
 @Slf4j
 public abstract class BaseHubEventHandler implements HubEventHandler {
 
     protected final KafkaEventProducer producer;
+    protected final ProtoAvroTranscoder transcoder;
 
-    protected BaseHubEventHandler(KafkaEventProducer producer) {
+    protected BaseHubEventHandler(KafkaEventProducer producer, ProtoAvroTranscoder transcoder) {
         this.producer = producer;
+        this.transcoder = transcoder;
     }
 
     protected abstract HubEventAvro mapToAvro(HubEventProto event);
 
+    /**
+     * Handlers that want the event validated through the generated Avro builders
+     * override this to use {@link #mapToAvro} instead of the direct transcoder.
+     */
+    protected boolean useObjectMapping() {
+        return false;
+    }
+
     @Override
     public void handle(HubEventProto event) {
-        HubEventAvro record = mapToAvro(event);
-        if (record == null) {
-            log.warn("Handler {} produced null Avro record for event: {}",
-                    getClass().getSimpleName(), event);
-            return;
+        byte[] payload;
+        if (useObjectMapping()) {
+            HubEventAvro record = mapToAvro(event);
+            if (record == null) {
+                log.warn("Handler {} produced null Avro record for event: {}",
+                        getClass().getSimpleName(), event);
+                return;
+            }
+            payload = transcoder.serialize(record);
+        } else {
+            payload = transcoder.transcode(event);
         }
-        producer.sendHubEventToKafka(record);
+        producer.sendHubEventToKafka(event.getHubId(), payload);
     }
 }
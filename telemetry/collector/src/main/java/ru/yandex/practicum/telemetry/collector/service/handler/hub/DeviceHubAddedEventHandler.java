@@ -7,14 +7,15 @@ import ru.yandex.practicum.kafka.telemetry.event.DeviceAddedEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
+import ru.yandex.practicum.telemetry.collector.service.transcoder.ProtoAvroTranscoder;
 
 import java.time.Instant;
 
 @Component
 public class DeviceHubAddedEventHandler extends BaseHubEventHandler {
 
-    public DeviceHubAddedEventHandler(KafkaEventProducer producer) {
-        super(producer);
+    public DeviceHubAddedEventHandler(KafkaEventProducer producer, ProtoAvroTranscoder transcoder) {
+        super(producer, transcoder);
     }
 
     @Override
@@ -6,14 +6,15 @@ import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
 import ru.yandex.practicum.kafka.telemetry.event.DeviceRemovedEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
+import ru.yandex.practicum.telemetry.collector.service.transcoder.ProtoAvroTranscoder;
 
 import java.time.Instant;
 
 @Component
 public class DeviceHubRemovedEventHandler extends BaseHubEventHandler {
 
-    public DeviceHubRemovedEventHandler(KafkaEventProducer producer) {
-        super(producer);
+    public DeviceHubRemovedEventHandler(KafkaEventProducer producer, ProtoAvroTranscoder transcoder) {
+        super(producer, transcoder);
     }
 
     @Override
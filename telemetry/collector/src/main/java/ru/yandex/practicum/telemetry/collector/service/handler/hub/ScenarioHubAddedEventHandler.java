@@ -5,6 +5,7 @@ import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
 import ru.yandex.practicum.grpc.telemetry.event.ScenarioAddedEventProto;
 import ru.yandex.practicum.kafka.telemetry.event.*;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
+import ru.yandex.practicum.telemetry.collector.service.transcoder.ProtoAvroTranscoder;
 
 import java.time.Instant;
 import java.util.List;
@@ -13,8 +14,8 @@ import java.util.stream.Collectors;
 @Component
 public class ScenarioHubAddedEventHandler extends BaseHubEventHandler {
 
-    public ScenarioHubAddedEventHandler(KafkaEventProducer producer) {
-        super(producer);
+    public ScenarioHubAddedEventHandler(KafkaEventProducer producer, ProtoAvroTranscoder transcoder) {
+        super(producer, transcoder);
     }
 
     @Override
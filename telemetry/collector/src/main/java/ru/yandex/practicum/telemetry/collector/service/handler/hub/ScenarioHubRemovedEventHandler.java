@@ -6,14 +6,15 @@ import ru.yandex.practicum.grpc.telemetry.event.ScenarioRemovedEventProto;
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.ScenarioRemovedEventAvro;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
+import ru.yandex.practicum.telemetry.collector.service.transcoder.ProtoAvroTranscoder;
 
 import java.time.Instant;
 
 @Component
 public class ScenarioHubRemovedEventHandler extends BaseHubEventHandler {
 
-    public ScenarioHubRemovedEventHandler(KafkaEventProducer producer) {
-        super(producer);
+    public ScenarioHubRemovedEventHandler(KafkaEventProducer producer, ProtoAvroTranscoder transcoder) {
+        super(producer, transcoder);
     }
 
     @Override
@@ -5,26 +5,48 @@ import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
 import ru.yandex.practicum.telemetry.collector.service.handler.SensorEventHandler;
+import ru.yandex.practicum.telemetry.collector.service.transcoder.ProtoAvroTranscoder;
 
 @Slf4j
 public abstract class BaseSensorEventHandler implements SensorEventHandler {
 
     protected final KafkaEventProducer producer;
+    protected final ProtoAvroTranscoder transcoder;
 
-    protected BaseSensorEventHandler(KafkaEventProducer producer) {
+    protected BaseSensorEventHandler(KafkaEventProducer producer, ProtoAvroTranscoder transcoder) {
         this.producer = producer;
+        this.transcoder = transcoder;
     }
 
-    protected abstract SensorEventAvro mapToAvro(SensorEventProto event);
+    /**
+     * Handlers that want the event validated through the generated Avro builders
+     * override this to use {@link #mapToAvro} instead of the direct transcoder.
+     */
+    protected boolean useObjectMapping() {
+        return false;
+    }
 
     @Override
-    public void handle(SensorEventProto event) {
+    public byte[] encode(SensorEventProto event) {
+        if (!useObjectMapping()) {
+            return transcoder.transcode(event);
+        }
+
         SensorEventAvro record = mapToAvro(event);
         if (record == null) {
             log.warn("Handler {} produced null Avro record for sensor event: {}",
                     getClass().getSimpleName(), event);
+            return null;
+        }
+        return transcoder.serialize(record);
+    }
+
+    @Override
+    public void handle(SensorEventProto event) {
+        byte[] payload = encode(event);
+        if (payload == null) {
             return;
         }
-        producer.sendSensorEventToKafka(record);
+        producer.sendSensorEventToKafka(event.getHubId(), payload);
     }
-}
\ No newline at end of file
+}
@@ -6,14 +6,15 @@ import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
 import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
+import ru.yandex.practicum.telemetry.collector.service.transcoder.ProtoAvroTranscoder;
 
 import java.time.Instant;
 
 @Component
 public class ClimateSensorEventHandler extends BaseSensorEventHandler {
 
-    public ClimateSensorEventHandler(KafkaEventProducer producer) {
-        super(producer);
+    public ClimateSensorEventHandler(KafkaEventProducer producer, ProtoAvroTranscoder transcoder) {
+        super(producer, transcoder);
     }
 
     @Override
@@ -22,7 +23,7 @@ public class ClimateSensorEventHandler extends BaseSensorEventHandler {
     }
 
     @Override
-    protected SensorEventAvro mapToAvro(SensorEventProto event) {
+    public SensorEventAvro mapToAvro(SensorEventProto event) {
         ClimateSensorProto record = event.getClimateSensorEvent();
 
         ClimateSensorAvro csEvent = ClimateSensorAvro.newBuilder()
@@ -6,14 +6,15 @@ import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
 import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
+import ru.yandex.practicum.telemetry.collector.service.transcoder.ProtoAvroTranscoder;
 
 import java.time.Instant;
 
 @Component
 public class LightSensorEventHandler extends BaseSensorEventHandler {
 
-    public LightSensorEventHandler(KafkaEventProducer producer) {
-        super(producer);
+    public LightSensorEventHandler(KafkaEventProducer producer, ProtoAvroTranscoder transcoder) {
+        super(producer, transcoder);
     }
 
     @Override
@@ -22,7 +23,7 @@ public class LightSensorEventHandler extends BaseSensorEventHandler {
     }
 
     @Override
-    protected SensorEventAvro mapToAvro(SensorEventProto event) {
+    public SensorEventAvro mapToAvro(SensorEventProto event) {
         LightSensorProto record = event.getLightSensorEvent();
 
         LightSensorAvro lsEvent = LightSensorAvro.newBuilder()
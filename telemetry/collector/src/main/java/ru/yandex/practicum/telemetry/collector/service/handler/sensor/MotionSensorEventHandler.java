@@ -6,14 +6,15 @@ import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
 import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
+import ru.yandex.practicum.telemetry.collector.service.transcoder.ProtoAvroTranscoder;
 
 import java.time.Instant;
 
 @Component
 public class MotionSensorEventHandler extends BaseSensorEventHandler {
 
-    public MotionSensorEventHandler(KafkaEventProducer producer) {
-        super(producer);
+    public MotionSensorEventHandler(KafkaEventProducer producer, ProtoAvroTranscoder transcoder) {
+        super(producer, transcoder);
     }
 
     @Override
@@ -22,7 +23,7 @@ public class MotionSensorEventHandler extends BaseSensorEventHandler {
     }
 
     @Override
-    protected SensorEventAvro mapToAvro(SensorEventProto event) {
+    public SensorEventAvro mapToAvro(SensorEventProto event) {
         MotionSensorProto record = event.getMotionSensorEvent();
 
         MotionSensorAvro msEvent = MotionSensorAvro.newBuilder()
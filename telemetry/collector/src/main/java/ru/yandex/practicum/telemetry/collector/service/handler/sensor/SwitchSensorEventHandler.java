@@ -6,14 +6,15 @@ import ru.yandex.practicum.grpc.telemetry.event.SwitchSensorProto;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
+import ru.yandex.practicum.telemetry.collector.service.transcoder.ProtoAvroTranscoder;
 
 import java.time.Instant;
 
 @Component
 public class SwitchSensorEventHandler extends BaseSensorEventHandler {
 
-    public SwitchSensorEventHandler(KafkaEventProducer producer) {
-        super(producer);
+    public SwitchSensorEventHandler(KafkaEventProducer producer, ProtoAvroTranscoder transcoder) {
+        super(producer, transcoder);
     }
 
     @Override
@@ -22,7 +23,7 @@ public class SwitchSensorEventHandler extends BaseSensorEventHandler {
     }
 
     @Override
-    protected SensorEventAvro mapToAvro(SensorEventProto event) {
+    public SensorEventAvro mapToAvro(SensorEventProto event) {
         SwitchSensorProto record = event.getSwitchSensorEvent();
 
         SwitchSensorAvro ssEvent = SwitchSensorAvro.newBuilder()
@@ -6,14 +6,15 @@ import ru.yandex.practicum.grpc.telemetry.event.TemperatureSensorProto;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
 import ru.yandex.practicum.telemetry.collector.service.KafkaEventProducer;
+import ru.yandex.practicum.telemetry.collector.service.transcoder.ProtoAvroTranscoder;
 
 import java.time.Instant;
 
 @Component
 public class TemperatureSensorEventHandler extends BaseSensorEventHandler {
 
-    public TemperatureSensorEventHandler(KafkaEventProducer producer) {
-        super(producer);
+    public TemperatureSensorEventHandler(KafkaEventProducer producer, ProtoAvroTranscoder transcoder) {
+        super(producer, transcoder);
     }
 
     @Override
@@ -22,10 +23,16 @@ public class TemperatureSensorEventHandler extends BaseSensorEventHandler {
     }
 
     @Override
-    protected SensorEventAvro mapToAvro(SensorEventProto event) {
+    public SensorEventAvro mapToAvro(SensorEventProto event) {
         TemperatureSensorProto record = event.getTemperatureSensorEvent();
+        Instant timestamp = Instant.ofEpochSecond(
+                event.getTimestamp().getSeconds(),
+                event.getTimestamp().getNanos());
 
         TemperatureSensorAvro tsEvent = TemperatureSensorAvro.newBuilder()
+                .setId(event.getId())
+                .setHubId(event.getHubId())
+                .setTimestamp(timestamp)
                 .setTemperatureC(record.getTemperatureC())
                 .setTemperatureF(record.getTemperatureF())
                 .build();
@@ -33,9 +40,7 @@ public class TemperatureSensorEventHandler extends BaseSensorEventHandler {
         return SensorEventAvro.newBuilder()
                 .setId(event.getId())
                 .setHubId(event.getHubId())
-                .setTimestamp(Instant.ofEpochSecond(
-                        event.getTimestamp().getSeconds(),
-                        event.getTimestamp().getNanos()))
+                .setTimestamp(timestamp)
                 .setPayload(tsEvent)
                 .build();
     }
@@ -0,0 +1,226 @@
+package ru.yandex.practicum.telemetry.collector.service.transcoder;
+
+import com.google.protobuf.Timestamp;
+import org.apache.avro.Schema;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.common.errors.SerializationException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.grpc.telemetry.event.ClimateSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceActionProto;
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.LightSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.MotionSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioAddedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioConditionProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.TemperatureSensorProto;
+import ru.yandex.practicum.kafka.telemetry.event.ActionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceActionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceAddedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceRemovedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioAddedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioConditionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioRemovedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+import ru.yandex.practicum.telemetry.collector.config.AvroEncodingBuffer;
+import ru.yandex.practicum.telemetry.collector.config.EventAvroSerializer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes Avro binary for {@link SensorEventAvro} and {@link HubEventAvro} straight from the parsed
+ * protobuf messages, without building the intermediate Avro objects.
+ * <p>
+ * Fields are written in the order declared in {@code SensorEvent.avdl} and {@code HubEvent.avdl};
+ * union branch indexes are resolved from the generated schemas at startup.
+ */
+@Component
+public class ProtoAvroTranscoder {
+
+    private final int climateBranch = branch(SensorEventAvro.getClassSchema(), ClimateSensorAvro.getClassSchema());
+    private final int lightBranch = branch(SensorEventAvro.getClassSchema(), LightSensorAvro.getClassSchema());
+    private final int motionBranch = branch(SensorEventAvro.getClassSchema(), MotionSensorAvro.getClassSchema());
+    private final int switchBranch = branch(SensorEventAvro.getClassSchema(), SwitchSensorAvro.getClassSchema());
+    private final int temperatureBranch =
+            branch(SensorEventAvro.getClassSchema(), TemperatureSensorAvro.getClassSchema());
+
+    private final int deviceAddedBranch = branch(HubEventAvro.getClassSchema(), DeviceAddedEventAvro.getClassSchema());
+    private final int deviceRemovedBranch =
+            branch(HubEventAvro.getClassSchema(), DeviceRemovedEventAvro.getClassSchema());
+    private final int scenarioAddedBranch =
+            branch(HubEventAvro.getClassSchema(), ScenarioAddedEventAvro.getClassSchema());
+    private final int scenarioRemovedBranch =
+            branch(HubEventAvro.getClassSchema(), ScenarioRemovedEventAvro.getClassSchema());
+
+    private final int conditionIntBranch = branch(ScenarioConditionAvro.getClassSchema(), "value", Schema.Type.INT);
+    private final int conditionBooleanBranch =
+            branch(ScenarioConditionAvro.getClassSchema(), "value", Schema.Type.BOOLEAN);
+    private final int actionIntBranch = branch(DeviceActionAvro.getClassSchema(), "value", Schema.Type.INT);
+
+    private final EventAvroSerializer<SpecificRecordBase> serializer = new EventAvroSerializer<>();
+
+    public byte[] transcode(SensorEventProto event) {
+        AvroEncodingBuffer buffer = AvroEncodingBuffer.acquire();
+        try {
+            Encoder encoder = buffer.encoder();
+            encoder.writeString(event.getId());
+            encoder.writeString(event.getHubId());
+            encoder.writeLong(toEpochMilli(event.getTimestamp()));
+            writeSensorPayload(event, encoder);
+            return buffer.toByteArray();
+        } catch (IOException | RuntimeException ex) {
+            throw new SerializationException(
+                    "Failed to transcode sensor event, payloadCase=[" + event.getPayloadCase() + "]", ex);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    public byte[] transcode(HubEventProto event) {
+        AvroEncodingBuffer buffer = AvroEncodingBuffer.acquire();
+        try {
+            Encoder encoder = buffer.encoder();
+            encoder.writeString(event.getHubId());
+            encoder.writeLong(toEpochMilli(event.getTimestamp()));
+            writeHubPayload(event, encoder);
+            return buffer.toByteArray();
+        } catch (IOException | RuntimeException ex) {
+            throw new SerializationException(
+                    "Failed to transcode hub event, payloadCase=[" + event.getPayloadCase() + "]", ex);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    public byte[] serialize(SpecificRecordBase record) {
+        return serializer.serialize(null, record);
+    }
+
+    private void writeSensorPayload(SensorEventProto event, Encoder encoder) throws IOException {
+        switch (event.getPayloadCase()) {
+            case CLIMATE_SENSOR_EVENT -> {
+                ClimateSensorProto climate = event.getClimateSensorEvent();
+                encoder.writeIndex(climateBranch);
+                encoder.writeInt(climate.getTemperatureC());
+                encoder.writeInt(climate.getHumidity());
+                encoder.writeInt(climate.getCo2Level());
+            }
+            case LIGHT_SENSOR_EVENT -> {
+                LightSensorProto light = event.getLightSensorEvent();
+                encoder.writeIndex(lightBranch);
+                encoder.writeInt(light.getLinkQuality());
+                encoder.writeInt(light.getLuminosity());
+            }
+            case MOTION_SENSOR_EVENT -> {
+                MotionSensorProto motion = event.getMotionSensorEvent();
+                encoder.writeIndex(motionBranch);
+                encoder.writeInt(motion.getLinkQuality());
+                encoder.writeBoolean(motion.getMotion());
+                encoder.writeInt(motion.getVoltage());
+            }
+            case SWITCH_SENSOR_EVENT -> {
+                encoder.writeIndex(switchBranch);
+                encoder.writeBoolean(event.getSwitchSensorEvent().getState());
+            }
+            case TEMPERATURE_SENSOR_EVENT -> {
+                TemperatureSensorProto temperature = event.getTemperatureSensorEvent();
+                encoder.writeIndex(temperatureBranch);
+                encoder.writeString(event.getId());
+                encoder.writeString(event.getHubId());
+                encoder.writeLong(toEpochMilli(event.getTimestamp()));
+                encoder.writeInt(temperature.getTemperatureC());
+                encoder.writeInt(temperature.getTemperatureF());
+            }
+            default -> throw new IllegalArgumentException("Unsupported sensor payload: " + event.getPayloadCase());
+        }
+    }
+
+    private void writeHubPayload(HubEventProto event, Encoder encoder) throws IOException {
+        switch (event.getPayloadCase()) {
+            case DEVICE_ADDED -> {
+                encoder.writeIndex(deviceAddedBranch);
+                encoder.writeString(event.getDeviceAdded().getId());
+                encoder.writeEnum(DeviceTypeAvro.valueOf(event.getDeviceAdded().getType().name()).ordinal());
+            }
+            case DEVICE_REMOVED -> {
+                encoder.writeIndex(deviceRemovedBranch);
+                encoder.writeString(event.getDeviceRemoved().getId());
+            }
+            case SCENARIO_ADDED -> {
+                encoder.writeIndex(scenarioAddedBranch);
+                writeScenarioAdded(event.getScenarioAdded(), encoder);
+            }
+            case SCENARIO_REMOVED -> {
+                encoder.writeIndex(scenarioRemovedBranch);
+                encoder.writeString(event.getScenarioRemoved().getName());
+            }
+            default -> throw new IllegalArgumentException("Unsupported hub payload: " + event.getPayloadCase());
+        }
+    }
+
+    private void writeScenarioAdded(ScenarioAddedEventProto scenario, Encoder encoder) throws IOException {
+        encoder.writeString(scenario.getName());
+
+        List<ScenarioConditionProto> conditions = scenario.getConditionList();
+        encoder.writeArrayStart();
+        encoder.setItemCount(conditions.size());
+        for (ScenarioConditionProto condition : conditions) {
+            encoder.startItem();
+            encoder.writeString(condition.getSensorId());
+            encoder.writeEnum(ConditionTypeAvro.valueOf(condition.getType().name()).ordinal());
+            encoder.writeEnum(ConditionOperationAvro.valueOf(condition.getOperation().name()).ordinal());
+            if (condition.hasIntValue()) {
+                encoder.writeIndex(conditionIntBranch);
+                encoder.writeInt(condition.getIntValue());
+            } else {
+                encoder.writeIndex(conditionBooleanBranch);
+                encoder.writeBoolean(condition.getBoolValue());
+            }
+        }
+        encoder.writeArrayEnd();
+
+        List<DeviceActionProto> actions = scenario.getActionList();
+        encoder.writeArrayStart();
+        encoder.setItemCount(actions.size());
+        for (DeviceActionProto action : actions) {
+            encoder.startItem();
+            encoder.writeString(action.getSensorId());
+            encoder.writeEnum(ActionTypeAvro.valueOf(action.getType().name()).ordinal());
+            encoder.writeIndex(actionIntBranch);
+            encoder.writeInt(action.getValue());
+        }
+        encoder.writeArrayEnd();
+    }
+
+    private static long toEpochMilli(Timestamp timestamp) {
+        return timestamp.getSeconds() * 1000 + timestamp.getNanos() / 1_000_000;
+    }
+
+    private static int branch(Schema recordSchema, Schema payloadSchema) {
+        return branch(recordSchema, "payload", payloadSchema.getFullName());
+    }
+
+    private static int branch(Schema recordSchema, String field, Schema.Type type) {
+        return branch(recordSchema, field, type.getName());
+    }
+
+    private static int branch(Schema recordSchema, String field, String name) {
+        Integer index = recordSchema.getField(field).schema().getIndexNamed(name);
+        if (index == null) {
+            throw new IllegalStateException(
+                    "Union " + recordSchema.getFullName() + "." + field + " has no branch " + name);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,82 @@
+package ru.yandex.practicum.telemetry.collector.config;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializer of the collector against the implementation it replaced, which built a stream, an encoder
+ * and a writer per message. Run with {@code -prof gc} for bytes/op ({@code gc.alloc.rate.norm}):
+ * <pre>
+ * mvn -Pjmh test -pl telemetry/collector -am -Djmh.args="EventAvroSerializerBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventAvroSerializerBenchmark {
+
+    private static final String TOPIC = "telemetry.sensors.v1";
+
+    private final EventAvroSerializer<SensorEventAvro> serializer = new EventAvroSerializer<>();
+    private final ByteBufferPool pool = new ByteBufferPool(1024, 16);
+
+    private SensorEventAvro event;
+
+    @Setup
+    public void setUp() {
+        event = SensorEventAvro.newBuilder()
+                .setId("climate-sensor-42")
+                .setHubId("hub-1f6a2c")
+                .setTimestamp(Instant.parse("2024-05-01T12:00:00Z"))
+                .setPayload(ClimateSensorAvro.newBuilder()
+                        .setTemperatureC(23)
+                        .setHumidity(41)
+                        .setCo2Level(812)
+                        .build())
+                .build();
+    }
+
+    @Benchmark
+    public byte[] perMessageWriter() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, null);
+        new SpecificDatumWriter<SensorEventAvro>(event.getSchema()).write(event, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] cachedWriter() {
+        return serializer.serialize(TOPIC, event);
+    }
+
+    @Benchmark
+    public int pooledBuffer() {
+        ByteBuffer buffer = serializer.serialize(TOPIC, event, pool);
+        int size = buffer.remaining();
+        pool.release(buffer);
+        return size;
+    }
+}
@@ -0,0 +1,175 @@
+package ru.yandex.practicum.telemetry.collector.service;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.clients.producer.internals.BuiltInPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.telemetry.collector.config.EventClient;
+import ru.yandex.practicum.telemetry.collector.config.EventTopic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KafkaEventProducerTest {
+
+    private static final int PARTITIONS = 6;
+    private static final int HUBS = 12;
+    private static final int EVENTS_PER_HUB = 50;
+
+    private final List<Sent> sent = new ArrayList<>();
+
+    private KafkaEventProducer eventProducer;
+
+    @BeforeEach
+    void setUp() {
+        MockProducer<String, byte[]> producer = new MockProducer<>(
+                cluster(EventTopic.TELEMETRY_SENSOR_TOPIC, EventTopic.TELEMETRY_HUB_TOPIC),
+                true, new KeyPartitioner(), new StringSerializer(), new ByteArraySerializer()) {
+
+            @Override
+            public synchronized Future<RecordMetadata> send(ProducerRecord<String, byte[]> record, Callback callback) {
+                Future<RecordMetadata> future = super.send(record, callback);
+                try {
+                    sent.add(new Sent(record, future.get().partition()));
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+                return future;
+            }
+        };
+
+        eventProducer = new KafkaEventProducer(new EventClient() {
+            @Override
+            public MockProducer<String, byte[]> getProducer() {
+                return producer;
+            }
+
+            @Override
+            public void stop() {
+            }
+        });
+    }
+
+    @Test
+    void sensorEventsOfOneHubLandOnOnePartitionInSendOrder() {
+        for (int seq = 0; seq < EVENTS_PER_HUB; seq++) {
+            for (int hub = 0; hub < HUBS; hub++) {
+                eventProducer.sendSensorEventToKafka(hubId(hub), payload(hub, seq));
+            }
+        }
+
+        assertOrderedPerHub(EventTopic.TELEMETRY_SENSOR_TOPIC);
+    }
+
+    @Test
+    void hubEventsOfOneHubLandOnOnePartitionInSendOrder() {
+        for (int seq = 0; seq < EVENTS_PER_HUB; seq++) {
+            for (int hub = 0; hub < HUBS; hub++) {
+                eventProducer.sendHubEventToKafka(hubId(hub), payload(hub, seq));
+            }
+        }
+
+        assertOrderedPerHub(EventTopic.TELEMETRY_HUB_TOPIC);
+    }
+
+    @Test
+    void batchedSensorEventsKeepPerHubOrder() {
+        for (int seq = 0; seq < EVENTS_PER_HUB; seq += 5) {
+            List<KafkaEventProducer.EncodedEvent> batch = new ArrayList<>();
+            for (int hub = 0; hub < HUBS; hub++) {
+                for (int i = seq; i < seq + 5; i++) {
+                    batch.add(new KafkaEventProducer.EncodedEvent(hubId(hub), payload(hub, i)));
+                }
+            }
+            eventProducer.sendSensorEventsToKafka(batch);
+        }
+
+        assertOrderedPerHub(EventTopic.TELEMETRY_SENSOR_TOPIC);
+    }
+
+    private void assertOrderedPerHub(String topic) {
+        assertThat(sent).hasSize(HUBS * EVENTS_PER_HUB);
+        assertThat(sent).allSatisfy(s -> assertThat(s.record().topic()).isEqualTo(topic));
+
+        Map<String, List<Sent>> byHub = sent.stream()
+                .collect(Collectors.groupingBy(s -> s.record().key(), LinkedHashMap::new, Collectors.toList()));
+        assertThat(byHub).hasSize(HUBS);
+
+        byHub.forEach((hubId, records) -> {
+            Set<Integer> partitions = records.stream().map(Sent::partition).collect(Collectors.toSet());
+            assertThat(partitions).as("partitions of %s", hubId).hasSize(1);
+
+            int partition = partitions.iterator().next();
+            List<String> partitionLog = sent.stream()
+                    .filter(s -> s.partition() == partition && s.record().key().equals(hubId))
+                    .map(s -> new String(s.record().value(), StandardCharsets.UTF_8))
+                    .toList();
+            int hub = Integer.parseInt(hubId.substring("hub-".length()));
+            assertThat(partitionLog).containsExactlyElementsOf(IntStream.range(0, EVENTS_PER_HUB)
+                    .mapToObj(seq -> new String(payload(hub, seq), StandardCharsets.UTF_8))
+                    .toList());
+        });
+
+        // keying must still spread hubs over the partitions
+        assertThat(sent.stream().map(Sent::partition).distinct().count()).isGreaterThan(1);
+    }
+
+    private static String hubId(int hub) {
+        return "hub-" + hub;
+    }
+
+    private static byte[] payload(int hub, int seq) {
+        return (hubId(hub) + ":" + seq).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Cluster cluster(String... topics) {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (String topic : topics) {
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                partitions.add(new PartitionInfo(topic, partition, node, new Node[]{node}, new Node[]{node}));
+            }
+        }
+        return new Cluster("test", List.of(node), partitions, Set.of(), Set.of());
+    }
+
+    // the partitioning KafkaProducer applies to keyed records when no partitioner is configured
+    private static class KeyPartitioner implements Partitioner {
+
+        @Override
+        public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes,
+                             Cluster cluster) {
+            return BuiltInPartitioner.partitionForKey(keyBytes, cluster.partitionCountForTopic(topic));
+        }
+
+        @Override
+        public void configure(Map<String, ?> configs) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private record Sent(ProducerRecord<String, byte[]> record, int partition) {
+    }
+}
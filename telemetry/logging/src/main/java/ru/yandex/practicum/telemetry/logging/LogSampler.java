@@ -0,0 +1,64 @@
+package ru.yandex.practicum.telemetry.logging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sampling decision shared by every logger of one category: a random fraction of lines
+ * is let through, and no more than {@code maxPerSecond} of them in each second.
+ */
+final class LogSampler {
+
+    private static final long SECOND_NANOS = 1_000_000_000L;
+
+    private final Counter suppressed;
+
+    private volatile double rate;
+    private volatile int maxPerSecond;
+
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicInteger written = new AtomicInteger();
+
+    LogSampler(String category, LogSamplingProperties.Category config) {
+        this.suppressed = Counter.builder("telemetry.logging.suppressed")
+                .description("Log lines dropped by sampling")
+                .tag("category", category)
+                .register(Metrics.globalRegistry);
+        configure(config);
+    }
+
+    void configure(LogSamplingProperties.Category config) {
+        this.rate = config.getRate();
+        this.maxPerSecond = config.getMaxPerSecond();
+    }
+
+    boolean sample() {
+        double rate = this.rate;
+        if (rate < 1.0 && (rate <= 0.0 || ThreadLocalRandom.current().nextDouble() >= rate)) {
+            suppressed.increment();
+            return false;
+        }
+        if (!acquire()) {
+            suppressed.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean acquire() {
+        int limit = maxPerSecond;
+        if (limit <= 0) {
+            return true;
+        }
+        long second = System.nanoTime() / SECOND_NANOS;
+        long current = window.get();
+        if (second != current && window.compareAndSet(current, second)) {
+            written.set(0);
+        }
+        return written.incrementAndGet() <= limit;
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.telemetry.logging;
+
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Entry point for sampled loggers, used like {@link LoggerFactory}:
+ * {@code private static final SampledLogger records = LogSampling.getLogger(Foo.class, "sensor-records");}
+ * <p>
+ * Loggers created before the application context is up use the built-in defaults
+ * and pick up {@code telemetry.logging.sampling} once it is bound.
+ */
+public final class LogSampling {
+
+    private static final Map<String, LogSampler> samplers = new ConcurrentHashMap<>();
+
+    private static volatile LogSamplingProperties properties = new LogSamplingProperties();
+
+    private LogSampling() {
+    }
+
+    public static SampledLogger getLogger(Class<?> owner, String category) {
+        LogSampler sampler = samplers.computeIfAbsent(category,
+                name -> new LogSampler(name, properties.category(name)));
+        return new SampledLogger(LoggerFactory.getLogger(owner), sampler);
+    }
+
+    static void configure(LogSamplingProperties configured) {
+        properties = configured;
+        samplers.forEach((name, sampler) -> sampler.configure(configured.category(name)));
+    }
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.telemetry.logging;
+
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+
+@AutoConfiguration
+@EnableConfigurationProperties(LogSamplingProperties.class)
+public class LogSamplingAutoConfiguration {
+
+    public LogSamplingAutoConfiguration(LogSamplingProperties properties) {
+        LogSampling.configure(properties);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.telemetry.logging;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties("telemetry.logging.sampling")
+public class LogSamplingProperties {
+
+    // applies to every category without its own entry
+    private Category defaults = new Category();
+
+    private Map<String, Category> categories = new HashMap<>();
+
+    public Category category(String name) {
+        return categories.getOrDefault(name, defaults);
+    }
+
+    @Getter
+    @Setter
+    public static class Category {
+
+        // fraction of lines that are written, 0..1
+        private double rate = 0.01;
+
+        // upper bound on written lines per second, 0 - unlimited
+        private int maxPerSecond = 50;
+    }
+}
@@ -0,0 +1,71 @@
+package ru.yandex.practicum.telemetry.logging;
+
+import org.slf4j.Logger;
+
+import java.util.function.Supplier;
+
+/**
+ * Logger for hot paths: a line is written only if its level is enabled and the category sampler lets it through.
+ * Arguments are rendered only for written lines, so {@link #lazy} payloads cost nothing for dropped ones.
+ */
+public final class SampledLogger {
+
+    private final Logger logger;
+    private final LogSampler sampler;
+
+    SampledLogger(Logger logger, LogSampler sampler) {
+        this.logger = logger;
+        this.sampler = sampler;
+    }
+
+    public static Object lazy(Supplier<?> payload) {
+        return new Object() {
+            @Override
+            public String toString() {
+                return String.valueOf(payload.get());
+            }
+        };
+    }
+
+    public void info(String format, Object arg) {
+        if (logger.isInfoEnabled() && sampler.sample()) {
+            logger.info(format, arg);
+        }
+    }
+
+    public void info(String format, Object arg1, Object arg2) {
+        if (logger.isInfoEnabled() && sampler.sample()) {
+            logger.info(format, arg1, arg2);
+        }
+    }
+
+    public void info(String format, Object... args) {
+        if (logger.isInfoEnabled() && sampler.sample()) {
+            logger.info(format, args);
+        }
+    }
+
+    public void debug(String format, Object arg) {
+        if (logger.isDebugEnabled() && sampler.sample()) {
+            logger.debug(format, arg);
+        }
+    }
+
+    public void debug(String format, Object arg1, Object arg2) {
+        if (logger.isDebugEnabled() && sampler.sample()) {
+            logger.debug(format, arg1, arg2);
+        }
+    }
+
+    public void debug(String format, Object... args) {
+        if (logger.isDebugEnabled() && sampler.sample()) {
+            logger.debug(format, args);
+        }
+    }
+
+    public void warn(String format, Object... args) {
+        if (logger.isWarnEnabled() && sampler.sample()) {
+            logger.warn(format, args);
+        }
+    }
+}